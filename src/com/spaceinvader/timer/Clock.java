@@ -0,0 +1,25 @@
+package com.spaceinvader.timer;
+
+/**
+ * A source of time for the game. Everything that needs to know the
+ * time, or wait for it to pass, goes through a clock so that the
+ * real time can be swapped for a virtual clock that runs as fast as
+ * the processor allows.
+ *
+ */
+public interface Clock {
+	/**
+	 * Get the current time. Only the difference between two times
+	 * means anything, the time itself could be from any starting point.
+	 *
+	 * @return The current time in nanoseconds
+	 */
+	public long nanoTime();
+
+	/**
+	 * Wait for a length of time to pass
+	 *
+	 * @param duration The time to wait in nanoseconds
+	 */
+	public void sleep(long duration);
+}
@@ -1,8 +1,13 @@
 /*     */ package com.spaceinvader.timer;
 /*     */ 
+/*     */ import com.spaceinvaders.SystemTimer;
+/*     */ 
 /*     */ public class DurationTimer
 /*     */ {
-/*  28 */   private AdvancedTimer timer = new AdvancedTimer();
+/*     */   private Clock clock;
+/*     */   private long start;
+/*     */   private long ticks;
+/*     */   private boolean running;
 /*     */   private long duration;
 /*  31 */   private boolean paused = false;
 /*     */   private long adjust;
@@ -10,17 +15,32 @@
 /*     */ 
 /*     */   public DurationTimer(long paramLong)
 /*     */   {
-/*  43 */     this.duration = paramLong;
+/*     */     this(paramLong, SystemTimer.getClock());
+/*     */   }
+/*     */ 
+/*     */   public DurationTimer(long paramLong, Clock paramClock)
+/*     */   {
+/*     */     this.duration = paramLong;
+/*     */     this.clock = paramClock;
 /*     */   }
 /*     */ 
 /*     */   public static long getTicksPerSecond()
 /*     */   {
-/*  55 */     return AdvancedTimer.getTicksPerSecond();
+/*     */     return 1000000000L;
 /*     */   }
 /*     */ 
 /*     */   public void start()
 /*     */   {
-/*  64 */     this.timer.start();
+/*     */     this.ticks = 0L;
+/*     */     this.running = true;
+/*     */     this.start = this.clock.nanoTime();
+/*     */   }
+/*     */ 
+/*     */   private long getClockTicks()
+/*     */   {
+/*     */     if (this.running) this.ticks = (this.clock.nanoTime() - this.start);
+/*     */ 
+/*     */     return this.ticks;
 /*     */   }
 /*     */ 
 /*     */   public void reset()
@@ -40,7 +60,7 @@
 /*  96 */     if (this.paused) return;
 /*     */ 
 /*  98 */     this.paused = true;
-/*  99 */     this.pausetime = this.timer.getClockTicks();
+/*     */     this.pausetime = getClockTicks();
 /*     */   }
 /*     */ 
 /*     */   public boolean isPaused()
@@ -52,20 +72,22 @@
 /*     */   {
 /* 117 */     if (!this.paused) return;
 /*     */ 
-/* 119 */     this.adjust += this.timer.getClockTicks() - this.pausetime;
+/*     */     this.adjust += getClockTicks() - this.pausetime;
 /* 120 */     this.paused = false;
 /*     */   }
 /*     */ 
 /*     */   public void stop()
 /*     */   {
-/* 129 */     this.timer.stop();
+/*     */     getClockTicks();
+/*     */ 
+/*     */     this.running = false;
 /*     */   }
 /*     */ 
 /*     */   public long getTicksRemaining()
 /*     */   {
 /* 140 */     if (this.paused) return this.duration - this.pausetime;
 /*     */ 
-/* 142 */     return Math.max(0L, this.duration + this.adjust - this.timer.getClockTicks());
+/*     */     return Math.max(0L, this.duration + this.adjust - getClockTicks());
 /*     */   }
 /*     */ 
 /*     */   public long getSecondsRemaining()
@@ -82,7 +104,7 @@
 /*     */   {
 /* 178 */     if (this.paused) return this.pausetime;
 /*     */ 
-/* 180 */     return Math.min(this.duration, this.timer.getClockTicks() - this.adjust);
+/*     */     return Math.min(this.duration, getClockTicks() - this.adjust);
 /*     */   }
 /*     */ 
 /*     */   public long getSecondsElapsed()
@@ -0,0 +1,161 @@
+package com.spaceinvader.timer;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A precise way to wait for the next frame without keeping a processor
+ * busy. Most of the wait is spent parked, giving the processor back to
+ * the system. Since a parked thread can wake late, parking stops a
+ * little short of the deadline and the last part of the wait is spun
+ * out. How short is worked out from how late parking has actually been
+ * waking up, so the spin stays as small as the system allows.
+ * <p>
+ * The pacer also records how far past each deadline it really woke up,
+ * so the accuracy of the frame timing can be reported. Several threads
+ * can wait on the same pacer, sharing what it has learnt.
+ *
+ */
+public class FramePacer {
+	/** The shortest tail of each wait we'll spin for (ns) */
+	private static final long MIN_SPIN = 50000;
+	/** The longest tail of each wait we'll spin for (ns) */
+	private static final long MAX_SPIN = 20000000;
+
+	/** The tail of each wait spun rather than parked (ns) */
+	private long spinThreshold = 1000000;
+	/** The average amount parking has woken up late by (ns) */
+	private double parkLateness;
+
+	/** The number of waits recorded */
+	private long waits;
+	/** The total amount waits overshot their deadline by (ns) */
+	private double overshootTotal;
+	/** The total of the squares of the overshoots, used for the jitter (ns^2) */
+	private double overshootSquares;
+	/** The largest amount a wait overshot its deadline by (ns) */
+	private long maxOvershoot;
+
+	/**
+	 * Wait for a length of time
+	 *
+	 * @param duration The time to wait in nanoseconds
+	 */
+	public void sleep(long duration) {
+		sleepUntil(System.nanoTime() + duration);
+	}
+
+	/**
+	 * Wait until a given time
+	 *
+	 * @param deadline The time to wait until, as given by System.nanoTime()
+	 */
+	public void sleepUntil(long deadline) {
+		long now = System.nanoTime();
+		long tail = getSpinThreshold();
+
+		// park for all but the tail of the wait, learning how late
+		// parking wakes so we know how much of the tail to spin
+		while (deadline - now > tail) {
+			long park = deadline - now - tail;
+			LockSupport.parkNanos(park);
+			long woke = System.nanoTime();
+			tail = calibrate(woke - now - park);
+			now = woke;
+		}
+
+		// spin out the rest, yielding so other threads still get a look in
+		while (deadline - now > 0) {
+			Thread.yield();
+			now = System.nanoTime();
+		}
+
+		record(now - deadline);
+	}
+
+	/**
+	 * Update the tail we spin for based on how late parking woke
+	 *
+	 * @param lateness The amount the last park overran (ns)
+	 * @return The new spin threshold (ns)
+	 */
+	private synchronized long calibrate(long lateness) {
+		// a slow moving average keeps one bad wake from leaving us
+		// spinning for ages, while allowing twice the average covers
+		// the normal spread of wake ups
+		parkLateness += (Math.max(0,lateness) - parkLateness) / 8;
+		spinThreshold = Math.min(MAX_SPIN,Math.max(MIN_SPIN,(long) (parkLateness * 2)));
+		return spinThreshold;
+	}
+
+	/**
+	 * Record how far past the deadline a wait finished
+	 *
+	 * @param overshoot The amount the wait overshot by (ns)
+	 */
+	private synchronized void record(long overshoot) {
+		waits++;
+		overshootTotal += overshoot;
+		overshootSquares += (double) overshoot * overshoot;
+		maxOvershoot = Math.max(maxOvershoot,overshoot);
+	}
+
+	/**
+	 * Clear the statistics recorded so far
+	 */
+	public synchronized void resetStatistics() {
+		waits = 0;
+		overshootTotal = 0;
+		overshootSquares = 0;
+		maxOvershoot = 0;
+	}
+
+	/**
+	 * Get the number of waits recorded
+	 *
+	 * @return The number of waits since the statistics were reset
+	 */
+	public synchronized long getWaits() {
+		return waits;
+	}
+
+	/**
+	 * Get the average amount waits overshot their deadline by
+	 *
+	 * @return The average overshoot in nanoseconds
+	 */
+	public synchronized double getMeanOvershoot() {
+		return waits == 0 ? 0 : overshootTotal / waits;
+	}
+
+	/**
+	 * Get the largest amount a wait overshot its deadline by
+	 *
+	 * @return The largest overshoot in nanoseconds
+	 */
+	public synchronized long getMaxOvershoot() {
+		return maxOvershoot;
+	}
+
+	/**
+	 * Get the jitter of the waits, the standard deviation of the
+	 * overshoots
+	 *
+	 * @return The jitter in nanoseconds
+	 */
+	public synchronized double getJitter() {
+		if (waits == 0) {
+			return 0;
+		}
+		double mean = overshootTotal / waits;
+		return Math.sqrt(Math.max(0,(overshootSquares / waits) - (mean * mean)));
+	}
+
+	/**
+	 * Get the tail of each wait currently being spun rather than parked
+	 *
+	 * @return The spin threshold in nanoseconds
+	 */
+	public synchronized long getSpinThreshold() {
+		return spinThreshold;
+	}
+}
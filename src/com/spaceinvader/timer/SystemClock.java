@@ -0,0 +1,53 @@
+package com.spaceinvader.timer;
+
+/**
+ * The clock following real time, using System.nanoTime() and waiting
+ * with a frame pacer so sleeping doesn't keep the processor busy.
+ *
+ */
+public class SystemClock implements Clock {
+	/** The pacer used to wait */
+	private FramePacer pacer;
+
+	/**
+	 * Create a new clock following real time
+	 */
+	public SystemClock() {
+		this(new FramePacer());
+	}
+
+	/**
+	 * Create a new clock following real time
+	 *
+	 * @param pacer The pacer used to wait
+	 */
+	public SystemClock(FramePacer pacer) {
+		this.pacer = pacer;
+	}
+
+	/**
+	 * @see com.spaceinvader.timer.Clock#nanoTime()
+	 */
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * @see com.spaceinvader.timer.Clock#sleep(long)
+	 */
+	public void sleep(long duration) {
+		if (duration > 0) {
+			pacer.sleep(duration);
+		}
+	}
+
+	/**
+	 * Get the pacer used to wait, which records how accurately
+	 * waits have woken up
+	 *
+	 * @return The frame pacer
+	 */
+	public FramePacer getPacer() {
+		return pacer;
+	}
+}
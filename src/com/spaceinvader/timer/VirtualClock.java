@@ -0,0 +1,57 @@
+package com.spaceinvader.timer;
+
+/**
+ * A clock that only moves when it's told to. Sleeping simply moves the
+ * time on rather than waiting, so a game running on a virtual clock
+ * plays out as fast as the processor allows while seeing exactly the
+ * same passage of time as it would in real time. Useful for tests and
+ * for running long stretches of play in batch. The clock can be shared
+ * between threads.
+ *
+ */
+public class VirtualClock implements Clock {
+	/** The current time (ns) */
+	private long time;
+
+	/**
+	 * Create a new virtual clock starting at zero
+	 */
+	public VirtualClock() {
+	}
+
+	/**
+	 * Create a new virtual clock
+	 *
+	 * @param time The time to start at (ns)
+	 */
+	public VirtualClock(long time) {
+		this.time = time;
+	}
+
+	/**
+	 * @see com.spaceinvader.timer.Clock#nanoTime()
+	 */
+	public synchronized long nanoTime() {
+		return time;
+	}
+
+	/**
+	 * Move the time on by the length of the sleep without waiting
+	 *
+	 * @see com.spaceinvader.timer.Clock#sleep(long)
+	 */
+	public synchronized void sleep(long duration) {
+		if (duration > 0) {
+			time += duration;
+		}
+	}
+
+	/**
+	 * Move the time on
+	 *
+	 * @param duration The time to move on by (ns)
+	 */
+	public synchronized void advance(long duration) {
+		time += duration;
+	}
+}
@@ -0,0 +1,361 @@
+package com.spaceinvaders;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The block of aliens (and the obstacles marching with them) moving as
+ * one. Rather than every alien keeping its own speed and being told
+ * individually to turn round or speed up, the formation owns a single
+ * origin and horizontal speed. Each member only records its offset from
+ * the origin, and the movement system places members relative to it.
+ * <p>
+ * Turning at the edges of the play area and stepping down the screen
+ * only touches the formation, whatever the number of members. The edges
+ * are checked against the bounding box of the live members, which is
+ * worked out again only after a member has been removed.
+ * <p>
+ * The formation also keeps track of which aliens are free to shoot, the
+ * bottom-most live alien in each column. Each column holds its shooters
+ * ordered top to bottom and drops dead ones off the bottom as aliens are
+ * killed, and the columns that still have a shooter are kept in a dense
+ * list so picking a random shooter doesn't depend on how many entities
+ * are in the world.
+ *
+ */
+public class AlienFormation {
+	/** The distance the formation moves down the screen each time it turns */
+	private static final double STEP_DOWN = 10;
+
+	/** The world holding the members of the formation */
+	private EntityWorld world;
+	/** The x location of the formation's origin */
+	private double x;
+	/** The y location of the formation's origin */
+	private double y;
+	/** The horizontal speed of the formation (pixels/sec) */
+	private double dx;
+	/** The x location past which the formation turns at the left edge */
+	private double leftEdge;
+	/** The x location past which the formation turns at the right edge */
+	private double rightEdge;
+	/** The y location past which the formation has reached the player */
+	private double bottom = 570;
+
+	/** The smallest x offset of a live member */
+	private double minOffsetX;
+	/** The largest x offset of a live member */
+	private double maxOffsetX;
+	/** The largest y offset of a live member */
+	private double maxOffsetY;
+	/** True if members have been removed since the bounds were last worked out */
+	private boolean boundsDirty;
+	/** True if the formation has at least one live member */
+	private boolean hasMembers;
+
+	/** The horizontal distance between columns of shooters */
+	private double columnWidth;
+	/** The handles of the shooters in each column, ordered top to bottom */
+	private int[][] columnShooters = new int[16][];
+	/** The number of shooters left in each column */
+	private int[] columnSize = new int[16];
+	/** The number of columns in use */
+	private int columnCount;
+	/** The columns that still have a live shooter */
+	private int[] liveColumns = new int[16];
+	/** The position of each column in the live list, or -1 if it has no shooters */
+	private int[] liveColumnPosition = new int[16];
+	/** The number of columns with a live shooter */
+	private int liveColumnCount;
+
+	/**
+	 * Create a new formation
+	 *
+	 * @param world The world holding the members of the formation
+	 */
+	public AlienFormation(EntityWorld world) {
+		this.world = world;
+	}
+
+	/**
+	 * Set the edges of the play area the formation turns at
+	 *
+	 * @param left The x location of the left edge
+	 * @param right The x location of the right edge
+	 */
+	public void setEdges(double left,double right) {
+		leftEdge = left;
+		rightEdge = right;
+	}
+
+	/**
+	 * Start a new formation with no members
+	 *
+	 * @param x The x location of the formation's origin
+	 * @param y The y location of the formation's origin
+	 * @param dx The initial horizontal speed of the formation (pixels/sec)
+	 * @param columnWidth The horizontal distance between columns of shooters
+	 */
+	public void reset(double x,double y,double dx,double columnWidth) {
+		this.x = x;
+		this.y = y;
+		this.dx = dx;
+		this.columnWidth = columnWidth;
+		hasMembers = false;
+		boundsDirty = false;
+
+		Arrays.fill(columnSize,0,columnCount,0);
+		columnCount = 0;
+		liveColumnCount = 0;
+	}
+
+	/**
+	 * Rebuild the formation from the members already in the world, 
+	 * keeping the places they hold in it. Used when the world has been
+	 * put back to an earlier state, every alien in formation can shoot 
+	 * again.
+	 *
+	 * @param x The x location of the formation's origin
+	 * @param y The y location of the formation's origin
+	 * @param dx The horizontal speed of the formation (pixels/sec)
+	 */
+	public void rebuild(double x,double y,double dx) {
+		reset(x,y,dx,columnWidth);
+		updateBounds();
+
+		for (int i=0;i<world.count;i++) {
+			if (((world.flags[i] & EntityWorld.IN_FORMATION) != 0) && (world.type[i] == EntityWorld.ALIEN)) {
+				addShooter(i);
+			}
+		}
+	}
+
+	/**
+	 * Add an entity to the formation at its current location
+	 *
+	 * @param slot The slot of the entity in the world
+	 */
+	public void join(int slot) {
+		double offsetX = world.x[slot] - x;
+		double offsetY = world.y[slot] - y;
+		world.offsetX[slot] = offsetX;
+		world.offsetY[slot] = offsetY;
+		world.flags[slot] |= EntityWorld.IN_FORMATION;
+
+		if (!hasMembers) {
+			minOffsetX = maxOffsetX = offsetX;
+			maxOffsetY = offsetY;
+			hasMembers = true;
+		} else {
+			minOffsetX = Math.min(minOffsetX,offsetX);
+			maxOffsetX = Math.max(maxOffsetX,offsetX);
+			maxOffsetY = Math.max(maxOffsetY,offsetY);
+		}
+	}
+
+	/**
+	 * Add a member of the formation to the shooters in its column. The
+	 * member must already have joined the formation.
+	 *
+	 * @param slot The slot of the entity in the world
+	 */
+	public void addShooter(int slot) {
+		int column = getColumn(slot);
+		if (column >= columnCount) {
+			if (column >= columnSize.length) {
+				int size = Math.max(column+1,columnSize.length*2);
+				columnShooters = Arrays.copyOf(columnShooters,size);
+				columnSize = Arrays.copyOf(columnSize,size);
+				liveColumns = Arrays.copyOf(liveColumns,size);
+				liveColumnPosition = Arrays.copyOf(liveColumnPosition,size);
+			}
+			for (int c=columnCount;c<=column;c++) {
+				if (columnShooters[c] == null) {
+					columnShooters[c] = new int[8];
+				}
+				columnSize[c] = 0;
+				liveColumnPosition[c] = -1;
+			}
+			columnCount = column+1;
+		}
+
+		int[] shooters = columnShooters[column];
+		int size = columnSize[column];
+		if (size == shooters.length) {
+			shooters = columnShooters[column] = Arrays.copyOf(shooters,size*2);
+		}
+
+		// keep the column ordered top to bottom, aliens are normally
+		// added a row at a time so this rarely has to shift anything
+		double offsetY = world.offsetY[slot];
+		int position = size;
+		while ((position > 0) && (world.offsetY[world.getSlot(shooters[position-1])] > offsetY)) {
+			shooters[position] = shooters[position-1];
+			position--;
+		}
+		shooters[position] = world.getHandle(slot);
+		columnSize[column] = size+1;
+
+		if (liveColumnPosition[column] < 0) {
+			liveColumnPosition[column] = liveColumnCount;
+			liveColumns[liveColumnCount++] = column;
+		}
+	}
+
+	/**
+	 * Notification that a member of the formation is being removed,
+	 * so the bounds need working out again and, if it was shooting for
+	 * its column, the next alien up takes over
+	 *
+	 * @param slot The slot of the member being removed
+	 */
+	public void memberRemoved(int slot) {
+		boundsDirty = true;
+
+		int column = getColumn(slot);
+		if ((column >= columnCount) || (columnSize[column] == 0)) {
+			return;
+		}
+
+		// drop dead shooters off the bottom of the column. Aliens that
+		// died further up are skipped here once they reach the bottom
+		int[] shooters = columnShooters[column];
+		int size = columnSize[column];
+		while ((size > 0) && !isLive(shooters[size-1])) {
+			size--;
+		}
+		columnSize[column] = size;
+
+		if (size == 0) {
+			// the column has no one left to shoot, swap the last live
+			// column into its place
+			int position = liveColumnPosition[column];
+			int last = liveColumns[--liveColumnCount];
+			liveColumns[position] = last;
+			liveColumnPosition[last] = position;
+			liveColumnPosition[column] = -1;
+		}
+	}
+
+	/**
+	 * Pick a random alien that is free to shoot
+	 *
+	 * @param random The random number generator used to pick
+	 * @return The slot of the shooter, or -1 if there are none left
+	 */
+	public int pickShooter(Random random) {
+		if (liveColumnCount == 0) {
+			return -1;
+		}
+
+		int column = liveColumns[random.nextInt(liveColumnCount)];
+		return world.getSlot(columnShooters[column][columnSize[column]-1]);
+	}
+
+	/**
+	 * Check if a shooter is still alive
+	 *
+	 * @param handle The handle of the shooter
+	 * @return True if the shooter is in the world and not being removed
+	 */
+	private boolean isLive(int handle) {
+		int slot = world.getSlot(handle);
+		return (slot >= 0) && !world.isRemoved(slot);
+	}
+
+	/**
+	 * Get the column of the formation a member is in
+	 *
+	 * @param slot The slot of the member
+	 * @return The column the member is in
+	 */
+	private int getColumn(int slot) {
+		return Math.max(0,(int) Math.round(world.offsetX[slot] / columnWidth));
+	}
+
+	/**
+	 * Work out the bounding box of the live members
+	 */
+	private void updateBounds() {
+		hasMembers = false;
+		for (int i=0;i<world.count;i++) {
+			if ((world.flags[i] & (EntityWorld.IN_FORMATION | EntityWorld.REMOVED)) != EntityWorld.IN_FORMATION) {
+				continue;
+			}
+
+			double offsetX = world.offsetX[i];
+			double offsetY = world.offsetY[i];
+			if (!hasMembers) {
+				minOffsetX = maxOffsetX = offsetX;
+				maxOffsetY = offsetY;
+				hasMembers = true;
+			} else {
+				minOffsetX = Math.min(minOffsetX,offsetX);
+				maxOffsetX = Math.max(maxOffsetX,offsetX);
+				maxOffsetY = Math.max(maxOffsetY,offsetY);
+			}
+		}
+		boundsDirty = false;
+	}
+
+	/**
+	 * Move the formation, turning it round and stepping it down the
+	 * screen if it has reached an edge
+	 *
+	 * @param delta The amount of time that has passed in milliseconds
+	 * @return True if the formation has reached the bottom of the screen
+	 */
+	public boolean move(long delta) {
+		if (boundsDirty) {
+			updateBounds();
+		}
+		if (!hasMembers) {
+			return false;
+		}
+
+		// turn round as soon as any live member passes an edge
+		if (((dx < 0) && (x + minOffsetX < leftEdge)) || ((dx > 0) && (x + maxOffsetX > rightEdge))) {
+			dx = -dx;
+			y += STEP_DOWN;
+		}
+		x += (delta * dx) / 1000;
+
+		return y + maxOffsetY > bottom;
+	}
+
+	/**
+	 * Speed up the formation
+	 *
+	 * @param factor The amount to multiply the speed by
+	 */
+	public void speedUp(double factor) {
+		dx *= factor;
+	}
+
+	/**
+	 * Get the horizontal speed of the formation
+	 *
+	 * @return The horizontal speed (pixels/sec)
+	 */
+	public double getSpeed() {
+		return dx;
+	}
+
+	/**
+	 * Get the x location of the formation's origin
+	 *
+	 * @return The x location of the origin
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Get the y location of the formation's origin
+	 *
+	 * @return The y location of the origin
+	 */
+	public double getY() {
+		return y;
+	}
+}
@@ -0,0 +1,45 @@
+package com.spaceinvaders;
+
+/**
+ * The system responsible for flipping through the frames of every
+ * animated entity as time passes.
+ *
+ */
+public class AnimationSystem {
+	/**
+	 * Advance the animation of every entity in the world
+	 *
+	 * @param world The world holding the entities
+	 * @param delta The amount of time that has passed in milliseconds
+	 */
+	public void animate(EntityWorld world,long delta) {
+		int[] animation = world.animation;
+		int[] frame = world.frame;
+		long[] frameTime = world.frameTime;
+
+		for (int i=0;i<world.count;i++) {
+			int anim = animation[i];
+			if (anim < 0) {
+				continue;
+			}
+
+			frameTime[i] += delta;
+
+			// if we need to change the frame, update the frame number
+			// and flip over the sprite in use
+			if (frameTime[i] > world.animationFrameDuration[anim]) {
+				// reset our frame change time counter
+				frameTime[i] = 0;
+
+				// update the frame
+				int[] frames = world.animationFrames[anim];
+				frame[i]++;
+				if (frame[i] >= frames.length) {
+					frame[i] = 0;
+				}
+
+				world.setSprite(i,frames[frame[i]]);
+			}
+		}
+	}
+}
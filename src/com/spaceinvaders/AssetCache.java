@@ -0,0 +1,498 @@
+package com.spaceinvaders;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+
+/**
+ * A file holding the game's images already decoded and converted to
+ * ARGB pixels, so later launches can skip ImageIO altogether. The file 
+ * is memory mapped and each image is made by copying its pixels straight
+ * out of the mapping.
+ * <p>
+ * Each image is stored with a key describing the resource it came from:
+ * its size and modification time, plus a CRC of its contents when it's
+ * in a jar (which records one) or its modification time isn't known. 
+ * An image whose resource no longer 
+ * matches its key is decoded again and the file rewritten, so the cache
+ * never needs clearing by hand.
+ * <p>
+ * A file can't be replaced while it's mapped on some systems (Windows),
+ * so each time the cache is written it goes to a new file, named after
+ * the cache with a generation number on the end. The newest generation
+ * is the one read, and older ones are deleted whenever they aren't 
+ * still mapped.
+ * <p>
+ * The file is laid out as:
+ * <p>
+ * - A header: MAGIC, VERSION and the length of the index
+ * - The index: the number of images, then for each its reference, key,
+ *   width, height and the offset of its pixels in the file
+ * - The pixels of each image, one int per pixel, row by row
+ * <p>
+ * Images can be looked up from any thread.
+ *
+ */
+public class AssetCache {
+	/** The value the file starts with */
+	private static final int MAGIC = 0x53494143;
+	/** The version of the file layout */
+	private static final int VERSION = 1;
+
+	/** The base name of the files the cache is kept in */
+	private File file;
+	/** The generation of the file mapped, or -1 if there isn't one */
+	private long generation = -1;
+	/** The mapping of the file, or null if there was no usable file */
+	private MappedByteBuffer mapping;
+	/** The images in the file, indexed by their reference */
+	private HashMap<String,Entry> stored = new HashMap<String,Entry>();
+	/** The images loaded or decoded this run, the contents of the file when it's next written */
+	private HashMap<String,Entry> current = new HashMap<String,Entry>();
+	/** True if an image had to be decoded, so the file needs writing again */
+	private boolean dirty;
+
+	/**
+	 * Open the cache kept in the newest generation of a file. A missing
+	 * or unreadable file just gives an empty cache.
+	 *
+	 * @param file The base name of the files the cache is kept in
+	 */
+	public AssetCache(File file) {
+		this.file = file;
+		long newest = getNewestGeneration();
+		if (newest < 0) {
+			return;
+		}
+
+		// clear out any older generations a previous run couldn't 
+		// delete because they were still mapped
+		generation = newest;
+		deleteOlderThan(newest);
+
+		File source = getGenerationFile(newest);
+		try {
+			RandomAccessFile raf = new RandomAccessFile(source,"r");
+			try {
+				// the mapping stays valid once the file is closed
+				mapping = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,0,raf.length());
+			} finally {
+				raf.close();
+			}
+			readIndex();
+		} catch (IOException e) {
+			ignore(e);
+		} catch (RuntimeException e) {
+			// a garbled file can run the reads off the end of the 
+			// mapping or the index, which is no different
+			ignore(e);
+		}
+	}
+
+	/**
+	 * Give up on a cache file that can't be read, leaving the cache 
+	 * empty
+	 *
+	 * @param e The reason the file couldn't be read
+	 */
+	private void ignore(Exception e) {
+		System.err.println("Ignoring unreadable asset cache "+getGenerationFile(generation)+": "+e);
+		mapping = null;
+		stored.clear();
+	}
+
+	/**
+	 * Read the index of the images in the file
+	 *
+	 * @throws IOException Indicates the file isn't a usable cache
+	 */
+	private void readIndex() throws IOException {
+		ByteBuffer buffer = mapping.duplicate();
+		if ((buffer.remaining() < 12) || (buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+			throw new IOException("Not an asset cache");
+		}
+		int length = buffer.getInt();
+		if ((length < 4) || (length > buffer.remaining())) {
+			throw new IOException("Bad index length: "+length);
+		}
+		byte[] index = new byte[length];
+		buffer.get(index);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+		int count = in.readInt();
+		for (int i=0;i<count;i++) {
+			Entry entry = new Entry();
+			String ref = in.readUTF();
+			entry.size = in.readLong();
+			entry.modified = in.readLong();
+			entry.crc = in.readLong();
+			entry.width = in.readInt();
+			entry.height = in.readInt();
+			entry.offset = in.readLong();
+			if ((entry.width <= 0) || (entry.height <= 0) || (entry.offset < 12 + length) || 
+					(entry.offset + ((long) entry.width * entry.height * 4) > mapping.capacity())) {
+				throw new IOException("Bad entry for "+ref);
+			}
+			stored.put(ref,entry);
+		}
+	}
+
+	/**
+	 * Load an image from the cache, if it's there and still matches its
+	 * resource
+	 *
+	 * @param ref The reference to the image
+	 * @param url The location of the resource the image comes from
+	 * @return The image, or null if it has to be decoded
+	 * @throws IOException Indicates a failure to check the resource
+	 */
+	public BufferedImage load(String ref,URL url) throws IOException {
+		Entry entry = stored.get(ref);
+		if ((entry == null) || !entry.matches(url)) {
+			return null;
+		}
+
+		BufferedImage image = new BufferedImage(entry.width,entry.height,BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		ByteBuffer buffer = mapping.duplicate();
+		buffer.position((int) entry.offset);
+		IntBuffer ints = buffer.asIntBuffer();
+		ints.get(pixels,0,entry.width * entry.height);
+
+		Entry kept = entry.copy();
+		kept.image = image;
+		synchronized (this) {
+			current.put(ref,kept);
+		}
+		return image;
+	}
+
+	/**
+	 * Add an image that had to be decoded, to be written to the file 
+	 * next time it's saved
+	 *
+	 * @param ref The reference to the image
+	 * @param url The location of the resource the image came from
+	 * @param image The decoded image, which must be TYPE_INT_ARGB
+	 * @throws IOException Indicates a failure to read the resource
+	 */
+	public void put(String ref,URL url,BufferedImage image) throws IOException {
+		Entry entry = new Entry();
+		entry.describe(url);
+		entry.width = image.getWidth();
+		entry.height = image.getHeight();
+		entry.image = image;
+		synchronized (this) {
+			current.put(ref,entry);
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Check if the file needs writing again, because images had to be 
+	 * decoded this run
+	 *
+	 * @return True if the file is out of date
+	 */
+	public synchronized boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Get the file a generation of the cache is kept in
+	 *
+	 * @param generation The generation of the cache
+	 * @return The file holding that generation
+	 */
+	private File getGenerationFile(long generation) {
+		return new File(file.getPath()+"."+generation);
+	}
+
+	/**
+	 * Get the generation of every file of the cache that exists
+	 *
+	 * @return The generations found, in no particular order
+	 */
+	private ArrayList<Long> getGenerations() {
+		ArrayList<Long> generations = new ArrayList<Long>();
+		File parent = file.getAbsoluteFile().getParentFile();
+		String[] names = parent == null ? null : parent.list();
+		if (names == null) {
+			return generations;
+		}
+
+		String prefix = file.getName()+".";
+		for (int i=0;i<names.length;i++) {
+			if (!names[i].startsWith(prefix)) {
+				continue;
+			}
+			try {
+				generations.add(Long.valueOf(Long.parseLong(names[i].substring(prefix.length()))));
+			} catch (NumberFormatException e) {
+				// not one of ours, or a file still being written
+			}
+		}
+		return generations;
+	}
+
+	/**
+	 * Get the newest generation of the cache
+	 *
+	 * @return The newest generation, or -1 if there are none
+	 */
+	private long getNewestGeneration() {
+		long newest = -1;
+		for (Long g : getGenerations()) {
+			newest = Math.max(newest,g.longValue());
+		}
+		return newest;
+	}
+
+	/**
+	 * Delete every generation of the cache older than one. A file that 
+	 * can't be deleted yet (it's still mapped) is left for a later run.
+	 *
+	 * @param keep The oldest generation to keep
+	 */
+	private void deleteOlderThan(long keep) {
+		for (Long g : getGenerations()) {
+			if (g.longValue() < keep) {
+				getGenerationFile(g.longValue()).delete();
+			}
+		}
+	}
+
+	/**
+	 * Write every image loaded or decoded this run to a new generation 
+	 * of the cache. The file is written alongside and then moved into 
+	 * place, so a cache being read is never seen half written, and the
+	 * file mapped by this cache is never replaced.
+	 *
+	 * @throws IOException Indicates a failure to write the file
+	 */
+	public synchronized void save() throws IOException {
+		// lay out the index, the pixels follow it in the same order
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream(indexBytes);
+		index.writeInt(current.size());
+		for (Map.Entry<String,Entry> e : current.entrySet()) {
+			Entry entry = e.getValue();
+			index.writeUTF(e.getKey());
+			index.writeLong(entry.size);
+			index.writeLong(entry.modified);
+			index.writeLong(entry.crc);
+			index.writeInt(entry.width);
+			index.writeInt(entry.height);
+			index.writeLong(0);
+		}
+		index.close();
+		byte[] indexData = indexBytes.toByteArray();
+
+		long offset = 12 + indexData.length;
+		ByteBuffer offsets = ByteBuffer.wrap(indexData);
+		int position = 4;
+		for (Map.Entry<String,Entry> e : current.entrySet()) {
+			Entry entry = e.getValue();
+			entry.offset = offset;
+			position += 2 + e.getKey().getBytes("UTF-8").length + 32;
+			offsets.putLong(position,offset);
+			position += 8;
+			offset += (long) entry.width * entry.height * 4;
+		}
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		long next = Math.max(generation,getNewestGeneration()) + 1;
+		File target = getGenerationFile(next);
+		File temp = new File(target.getPath()+".tmp");
+
+		// written through a stream rather than a mapping, so nothing 
+		// holds the new file open once it's closed
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(indexData.length);
+			out.write(indexData);
+			for (Entry entry : current.values()) {
+				int[] pixels = entry.image.getRGB(0,0,entry.width,entry.height,null,0,entry.width);
+				for (int i=0;i<pixels.length;i++) {
+					out.writeInt(pixels[i]);
+				}
+			}
+			out.flush();
+			stream.getChannel().force(true);
+		} finally {
+			stream.close();
+		}
+
+		try {
+			Files.move(temp.toPath(),target.toPath(),StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.move(temp.toPath(),target.toPath(),StandardCopyOption.REPLACE_EXISTING);
+		}
+		deleteOlderThan(next);
+		dirty = false;
+	}
+
+	/**
+	 * Get the default location of the cache, set by the 
+	 * spaceinvaders.assetcache property
+	 *
+	 * @return The base name of the files the cache is kept in, or null 
+	 * if the cache has been turned off (spaceinvaders.assetcache=off)
+	 */
+	public static File getDefaultFile() {
+		String path = System.getProperty("spaceinvaders.assetcache");
+		if ("off".equals(path)) {
+			return null;
+		}
+		if (path == null) {
+			return new File(System.getProperty("user.home"),".spaceinvaders"+File.separator+"assets.cache");
+		}
+		return new File(path);
+	}
+
+	/**
+	 * Build the cache from every asset in the manifest, so the first
+	 * launch is as quick as the rest
+	 *
+	 * @param argv The arguments passed in, optionally the base name of the cache files
+	 */
+	public static void main(String argv[]) {
+		if (argv.length > 0) {
+			System.setProperty("spaceinvaders.assetcache",argv[0]);
+		}
+		AssetPreloader preloader = new AssetPreloader();
+		preloader.start();
+		preloader.finish();
+		System.out.println(preloader.getReport());
+	}
+
+	/**
+	 * The description of one image in the cache
+	 */
+	private static class Entry {
+		/** The size of the resource the image came from, or -1 if unknown */
+		private long size;
+		/** The modification time of the resource, or 0 if unknown */
+		private long modified;
+		/** The CRC of the resource's contents, only used when the modification time is unknown */
+		private long crc;
+		/** The width of the image */
+		private int width;
+		/** The height of the image */
+		private int height;
+		/** The offset of the image's pixels in the file */
+		private long offset;
+		/** The image itself, when it's been loaded or decoded this run */
+		private BufferedImage image;
+
+		/**
+		 * Fill in the key of this entry from the resource it comes from
+		 *
+		 * @param url The location of the resource
+		 * @throws IOException Indicates a failure to read the resource
+		 */
+		void describe(URL url) throws IOException {
+			// files and jar entries can be described without opening a
+			// connection, which is surprisingly slow the first time
+			if ("file".equals(url.getProtocol())) {
+				try {
+					File file = new File(url.toURI());
+					size = file.length();
+					modified = file.lastModified();
+					crc = 0;
+					return;
+				} catch (URISyntaxException e) {
+					// fall through to opening a connection
+				}
+			}
+			if ("jar".equals(url.getProtocol())) {
+				// the jar entry already knows its contents' CRC
+				JarEntry entry = ((JarURLConnection) url.openConnection()).getJarEntry();
+				size = entry.getSize();
+				modified = entry.getTime();
+				crc = entry.getCrc();
+				return;
+			}
+
+			URLConnection connection = url.openConnection();
+			connection.setUseCaches(false);
+			size = connection.getContentLengthLong();
+			modified = connection.getLastModified();
+			InputStream in = connection.getInputStream();
+			try {
+				crc = 0;
+				if (modified == 0) {
+					// no modification time, fall back to the contents
+					CRC32 checksum = new CRC32();
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) > 0) {
+						checksum.update(buffer,0,read);
+					}
+					crc = checksum.getValue();
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * Check if this entry still matches the resource it came from
+		 *
+		 * @param url The location of the resource
+		 * @return True if the resource hasn't changed
+		 * @throws IOException Indicates a failure to read the resource
+		 */
+		boolean matches(URL url) throws IOException {
+			Entry now = new Entry();
+			now.describe(url);
+			return (now.size == size) && (now.modified == modified) && (now.crc == crc);
+		}
+
+		/**
+		 * Copy this entry
+		 *
+		 * @return A copy of this entry
+		 */
+		Entry copy() {
+			Entry copy = new Entry();
+			copy.size = size;
+			copy.modified = modified;
+			copy.crc = crc;
+			copy.width = width;
+			copy.height = height;
+			copy.offset = offset;
+			return copy;
+		}
+	}
+}
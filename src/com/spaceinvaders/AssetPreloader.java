@@ -0,0 +1,163 @@
+package com.spaceinvaders;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes every resource the game needs in parallel while the window is
+ * being created, so nothing has to be decoded once play starts. The 
+ * resources are listed in a manifest (MANIFEST), one per line as the 
+ * kind of asset then its reference:
+ * <p>
+ * - image: an image decoded into the image cache (@see ImageCache)
+ * - sprite: an image that's also made into a sprite once decoded
+ * <p>
+ * Blank lines and lines starting with # are ignored.
+ * <p>
+ * start() sets the decoding going on a pool of worker threads and 
+ * returns straight away. finish() waits for it, then registers the 
+ * sprites in the order they're listed, so sprite ids come out the same
+ * however the decoding was spread across the workers.
+ * <p>
+ * Unless it's been turned off, the decoded images are kept in a cache
+ * on disk (@see AssetCache) so later launches can skip decoding. The 
+ * cache is written again by finish() whenever an image had to be 
+ * decoded.
+ *
+ */
+public class AssetPreloader {
+	/** The manifest listing the resources to load */
+	public static final String MANIFEST = "gameresources/assets.txt";
+
+	/** The reference of each resource to load */
+	private ArrayList<String> refs = new ArrayList<String>();
+	/** True for each resource that's a sprite */
+	private ArrayList<Boolean> sprites = new ArrayList<Boolean>();
+	/** The time loading started (ns) */
+	private long startTime;
+	/** The time loading took, from start() to the end of finish() (ns) */
+	private long totalTime;
+
+	/**
+	 * Create a new preloader, reading the manifest
+	 */
+	public AssetPreloader() {
+		InputStream in = this.getClass().getClassLoader().getResourceAsStream(MANIFEST);
+		if (in == null) {
+			Util.fail("Can't find ref: "+MANIFEST);
+		}
+
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in,"UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if ((line.length() == 0) || line.startsWith("#")) {
+						continue;
+					}
+
+					String[] parts = line.split("\\s+");
+					if ((parts.length != 2) || !(parts[0].equals("image") || parts[0].equals("sprite"))) {
+						Util.fail("Bad line in "+MANIFEST+": "+line);
+					}
+					refs.add(parts[1]);
+					sprites.add(Boolean.valueOf(parts[0].equals("sprite")));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			Util.fail("Failed to load: "+MANIFEST);
+		}
+	}
+
+	/**
+	 * Start decoding every resource on a pool of worker threads, one per
+	 * processor
+	 */
+	public void start() {
+		startTime = System.nanoTime();
+
+		File cacheFile = AssetCache.getDefaultFile();
+		if ((cacheFile != null) && (ImageCache.get().getDiskCache() == null)) {
+			ImageCache.get().setDiskCache(new AssetCache(cacheFile));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r,"Asset Loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (int i=0;i<refs.size();i++) {
+			ImageCache.get().preload(refs.get(i),pool);
+		}
+
+		// the workers finish what's queued then stop
+		pool.shutdown();
+	}
+
+	/**
+	 * Wait for every resource to be decoded, then make the sprites
+	 * ready to draw
+	 */
+	public void finish() {
+		SpriteShapes shapes = SpriteShapes.get();
+		SpriteStore store = SpriteStore.get();
+
+		for (int i=0;i<refs.size();i++) {
+			String ref = refs.get(i);
+			ImageCache.get().getImage(ref);
+			if (sprites.get(i).booleanValue()) {
+				store.getSprite(shapes.getId(ref));
+			}
+		}
+
+		// anything decoded this time is written to the cache for next 
+		// time. Failing to write it only costs the next launch time
+		AssetCache disk = ImageCache.get().getDiskCache();
+		if ((disk != null) && disk.isDirty()) {
+			try {
+				disk.save();
+			} catch (IOException e) {
+				System.err.println("Failed to write asset cache: "+e);
+			}
+		}
+
+		totalTime = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Get a report of how long each resource took to decode, or to copy
+	 * out of the disk cache
+	 *
+	 * @return The report, one line per resource and a total
+	 */
+	public String getReport() {
+		StringBuilder report = new StringBuilder();
+		long decodeTotal = 0;
+		int cachedCount = 0;
+		for (int i=0;i<refs.size();i++) {
+			long time = ImageCache.get().getDecodeTime(refs.get(i));
+			boolean cached = ImageCache.get().isFromDiskCache(refs.get(i));
+			decodeTotal += Math.max(0,time);
+			cachedCount += cached ? 1 : 0;
+			report.append("  ").append(refs.get(i)).append(": ").append(time / 1000).append("us")
+				.append(cached ? " (cached)\n" : "\n");
+		}
+		report.append("Loaded ").append(refs.size()).append(" assets (").append(cachedCount).append(" from the disk cache) in ")
+			.append(totalTime / 1000).append("us (")
+			.append(decodeTotal / 1000).append("us of decoding across ")
+			.append(Runtime.getRuntime().availableProcessors()).append(" threads)");
+		return report.toString();
+	}
+}
@@ -0,0 +1,142 @@
+package com.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * The static background of the game, scaled to the size of the screen
+ * once and kept in video memory so each frame is just a copy. 
+ * <p>
+ * The copy in video memory can be lost at any time (switching display
+ * modes, locking the screen), so it's checked before every use and 
+ * drawn again from the source image when it has gone. With no screen
+ * to draw to (running headless) the layer is kept in an ordinary image 
+ * instead, which is never lost.
+ *
+ */
+public class BackgroundLayer {
+	/** The image the layer is drawn from */
+	private Image source;
+	/** The width of the layer */
+	private int width;
+	/** The height of the layer */
+	private int height;
+	/** The layer in video memory, or null if it hasn't been created */
+	private VolatileImage accelerated;
+	/** The layer in an ordinary image, used when running headless */
+	private BufferedImage buffered;
+	/** The number of times the layer has been drawn from the source */
+	private int restoreCount;
+
+	/**
+	 * Create a new background layer
+	 *
+	 * @param source The image the layer is drawn from, stretched to fill it
+	 * @param width The width of the layer
+	 * @param height The height of the layer
+	 */
+	public BackgroundLayer(Image source,int width,int height) {
+		this.source = source;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Draw the whole layer
+	 *
+	 * @param g The graphics context to draw on
+	 */
+	public void draw(Graphics2D g) {
+		draw(g,0,0,width,height);
+	}
+
+	/**
+	 * Draw part of the layer, in the same place it would be if the whole
+	 * layer was drawn
+	 *
+	 * @param g The graphics context to draw on
+	 * @param x The x location of the part to draw
+	 * @param y The y location of the part to draw
+	 * @param w The width of the part to draw
+	 * @param h The height of the part to draw
+	 */
+	public void draw(Graphics2D g,int x,int y,int w,int h) {
+		Image image = validate();
+		g.drawImage(image,x,y,x+w,y+h,x,y,x+w,y+h,null);
+	}
+
+	/**
+	 * Check the layer is ready to draw, creating it or drawing it again
+	 * from the source if its contents have been lost
+	 *
+	 * @return The image holding the layer
+	 */
+	private Image validate() {
+		if (GraphicsEnvironment.isHeadless()) {
+			if (buffered == null) {
+				buffered = new BufferedImage(width,height,BufferedImage.TYPE_INT_RGB);
+				render(buffered.createGraphics());
+			}
+			return buffered;
+		}
+
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		if (accelerated == null) {
+			accelerated = gc.createCompatibleVolatileImage(width,height,Transparency.OPAQUE);
+			render(accelerated.createGraphics());
+		}
+
+		// redraw the layer until it's drawn without being lost part way
+		int status = accelerated.validate(gc);
+		while ((status != VolatileImage.IMAGE_OK) || accelerated.contentsLost()) {
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				accelerated.flush();
+				accelerated = gc.createCompatibleVolatileImage(width,height,Transparency.OPAQUE);
+			}
+			render(accelerated.createGraphics());
+			status = accelerated.validate(gc);
+		}
+
+		return accelerated;
+	}
+
+	/**
+	 * Draw the source image into the layer, scaled to fill it
+	 *
+	 * @param g The graphics context of the layer
+	 */
+	private void render(Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(source,0,0,width,height,null);
+		g.dispose();
+		restoreCount++;
+	}
+
+	/**
+	 * Release the video memory held by the layer. The layer is created
+	 * again if it's drawn afterwards.
+	 */
+	public void flush() {
+		if (accelerated != null) {
+			accelerated.flush();
+			accelerated = null;
+		}
+		buffered = null;
+	}
+
+	/**
+	 * Get the number of times the layer has been drawn from the source,
+	 * once when it's created and again each time it's lost
+	 *
+	 * @return The number of times the layer has been drawn
+	 */
+	public int getRestoreCount() {
+		return restoreCount;
+	}
+}
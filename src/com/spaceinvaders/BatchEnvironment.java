@@ -0,0 +1,378 @@
+package com.spaceinvaders;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.spaceinvader.timer.VirtualClock;
+
+/**
+ * A batch of independent games stepped in lockstep, for training and
+ * evaluating autopilots. Each step takes one action per game and hands
+ * back an observation, a reward and whether the episode ended for each.
+ * Games whose episode has ended are started again automatically.
+ * <p>
+ * Every game has its own seeded random number generator and virtual
+ * clock, so the games never share state and the whole batch plays out
+ * the same way for the same seed and actions. The games are split across
+ * a fork/join pool, each task stepping a run of neighbouring games, so
+ * the batch spreads over every core.
+ * <p>
+ * An action is built from the LEFT, RIGHT and FIRE bits. An observation
+ * is OBSERVATION_SIZE floats, laid out one game after another:
+ * <p>
+ * - The ship's x location (0 to 1 across the play area)
+ * - The formation's x and y location (0 to 1)
+ * - The formation's speed (pixels/sec divided by 1000)
+ * - The fraction of aliens left alive
+ * - The current level
+ * - Then for the NEAREST_SHOTS alien shots closest to the ship, their
+ *   x and y offset from the ship (-1 to 1), or zero if there's no shot
+ * <p>
+ * The reward is the score gained during the step, less DEATH_PENALTY if
+ * the player died. An episode ends when the player dies, clearing a
+ * level simply carries on to the next.
+ *
+ */
+public class BatchEnvironment {
+	/** The action bit to move the ship left */
+	public static final int LEFT = Simulation.LEFT;
+	/** The action bit to move the ship right */
+	public static final int RIGHT = Simulation.RIGHT;
+	/** The action bit to fire */
+	public static final int FIRE = Simulation.FIRE;
+	/** The number of alien shots described in each observation */
+	public static final int NEAREST_SHOTS = 4;
+	/** The number of values in the observation of each game */
+	public static final int OBSERVATION_SIZE = 6 + (NEAREST_SHOTS * 2);
+	/** The reward lost when the player dies */
+	public static final float DEATH_PENALTY = 100;
+
+	/** The length of each update (ms), the same as the window uses */
+	private static final long UPDATE_INTERVAL = 8;
+	/** The most games a single task steps before splitting */
+	private static final int GAMES_PER_TASK = 4;
+	/** The width of the play area in each game */
+	private static final int WIDTH = Playfield.WIDTH;
+	/** The height of the play area in each game */
+	private static final int HEIGHT = Playfield.HEIGHT;
+
+	/** The games in the batch */
+	private Simulation[] games;
+	/** The clock timing each game */
+	private VirtualClock[] clocks;
+	/** The number of aliens in each game at the start of a level */
+	private int[] startingAliens;
+	/** The number of updates run for each step */
+	private int updatesPerStep;
+	/** The pool the games are stepped on */
+	private ForkJoinPool pool;
+
+	/** The actions for the step being run */
+	private int[] actions;
+	/** The observation of every game after the last step */
+	private float[] observations;
+	/** The reward of every game for the last step */
+	private float[] rewards;
+	/** True for each game whose episode ended in the last step */
+	private boolean[] dones;
+	/** The distances of the nearest shots found for each game, used while observing */
+	private double[] nearest;
+
+	/**
+	 * Create a new batch of games, stepped on the common fork/join pool
+	 *
+	 * @param count The number of games in the batch
+	 * @param seed The seed the games' own seeds are picked from
+	 * @param updatesPerStep The number of updates run for each step
+	 */
+	public BatchEnvironment(int count,long seed,int updatesPerStep) {
+		this(count,seed,updatesPerStep,ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a new batch of games
+	 *
+	 * @param count The number of games in the batch
+	 * @param seed The seed the games' own seeds are picked from
+	 * @param updatesPerStep The number of updates run for each step
+	 * @param pool The pool the games are stepped on
+	 */
+	public BatchEnvironment(int count,long seed,int updatesPerStep,ForkJoinPool pool) {
+		this.updatesPerStep = updatesPerStep;
+		this.pool = pool;
+
+		games = new Simulation[count];
+		clocks = new VirtualClock[count];
+		startingAliens = new int[count];
+		observations = new float[count * OBSERVATION_SIZE];
+		rewards = new float[count];
+		dones = new boolean[count];
+		nearest = new double[count * NEAREST_SHOTS];
+
+		Random seeds = new Random(seed);
+		for (int i=0;i<count;i++) {
+			clocks[i] = new VirtualClock();
+			games[i] = new Simulation(WIDTH,HEIGHT,seeds.nextLong(),clocks[i]);
+		}
+
+		startAll();
+	}
+
+	/**
+	 * Start the first episode of every game
+	 */
+	private void startAll() {
+		for (int i=0;i<games.length;i++) {
+			games[i].start();
+			games[i].update(0);
+			startingAliens[i] = games[i].getAlienCount();
+			observe(i);
+		}
+	}
+
+	/**
+	 * Step every game on by one action. The arrays returned are reused
+	 * by the next step.
+	 *
+	 * @param actions The action for each game, built from LEFT, RIGHT and FIRE
+	 * @return The observation of every game after the step
+	 */
+	public float[] step(int[] actions) {
+		if (actions.length != games.length) {
+			throw new IllegalArgumentException("Expected "+games.length+" actions, got "+actions.length);
+		}
+
+		this.actions = actions;
+		pool.invoke(new StepTask(0,games.length));
+
+		return observations;
+	}
+
+	/**
+	 * Step a single game on by its action
+	 *
+	 * @param i The index of the game
+	 */
+	private void stepGame(int i) {
+		Simulation game = games[i];
+		VirtualClock clock = clocks[i];
+		int action = actions[i];
+
+		game.setLeftPressed((action & LEFT) != 0);
+		game.setRightPressed((action & RIGHT) != 0);
+		game.setFirePressed((action & FIRE) != 0);
+
+		int score = game.getScore();
+		int lastScore = score;
+		int deaths = game.getDeaths();
+		int level = game.getLevel();
+		float reward = 0;
+		boolean done = false;
+
+		for (int u=0;u<updatesPerStep;u++) {
+			game.update(UPDATE_INTERVAL);
+			clock.advance(UPDATE_INTERVAL * 1000000);
+
+			if (game.getDeaths() != deaths) {
+				// the score is wiped on death, so only count what was
+				// gained in the updates before it
+				reward += lastScore - score;
+				reward -= DEATH_PENALTY;
+				done = true;
+				break;
+			}
+			lastScore = game.getScore();
+			if (game.getLevel() != level) {
+				// cleared the level, carry straight on to the next
+				reward += lastScore - score;
+				score = lastScore;
+				level = game.getLevel();
+				game.start();
+				game.update(0);
+				startingAliens[i] = game.getAlienCount();
+			}
+		}
+		if (!done) {
+			reward += game.getScore() - score;
+		} else {
+			// start the next episode straight away
+			game.start();
+			game.update(0);
+			startingAliens[i] = game.getAlienCount();
+		}
+
+		rewards[i] = reward;
+		dones[i] = done;
+		observe(i);
+	}
+
+	/**
+	 * Fill in the observation of a game
+	 *
+	 * @param i The index of the game
+	 */
+	private void observe(int i) {
+		Simulation game = games[i];
+		AlienFormation formation = game.getFormation();
+		Entity ship = game.getShip();
+		float[] o = observations;
+		int base = i * OBSERVATION_SIZE;
+
+		double shipX = ship.getX();
+		double shipY = ship.getY();
+		o[base] = (float) (shipX / WIDTH);
+		o[base+1] = (float) (formation.getX() / WIDTH);
+		o[base+2] = (float) (formation.getY() / HEIGHT);
+		o[base+3] = (float) (formation.getSpeed() / 1000);
+		o[base+4] = startingAliens[i] == 0 ? 0 : (float) game.getAlienCount() / startingAliens[i];
+		o[base+5] = game.getLevel();
+
+		// keep the nearest alien shots, sorted nearest first
+		int shotBase = base + 6;
+		int nearestBase = i * NEAREST_SHOTS;
+		int found = 0;
+		ProjectileManager projectiles = game.getProjectiles();
+		for (int s=0;s<projectiles.liveCount;s++) {
+			int b = projectiles.live[s];
+			if (projectiles.side[b] != ProjectileManager.ALIEN) {
+				continue;
+			}
+
+			double dx = projectiles.x[b] - shipX;
+			double dy = projectiles.y[b] - shipY;
+			double distance = (dx * dx) + (dy * dy);
+			if ((found == NEAREST_SHOTS) && (distance >= nearest[nearestBase+found-1])) {
+				continue;
+			}
+
+			int position = found < NEAREST_SHOTS ? found++ : found - 1;
+			while ((position > 0) && (nearest[nearestBase+position-1] > distance)) {
+				nearest[nearestBase+position] = nearest[nearestBase+position-1];
+				o[shotBase+(position*2)] = o[shotBase+((position-1)*2)];
+				o[shotBase+(position*2)+1] = o[shotBase+((position-1)*2)+1];
+				position--;
+			}
+			nearest[nearestBase+position] = distance;
+			o[shotBase+(position*2)] = (float) (dx / WIDTH);
+			o[shotBase+(position*2)+1] = (float) (dy / HEIGHT);
+		}
+		for (int s=found;s<NEAREST_SHOTS;s++) {
+			o[shotBase+(s*2)] = 0;
+			o[shotBase+(s*2)+1] = 0;
+		}
+	}
+
+	/**
+	 * Get the reward of every game for the last step
+	 *
+	 * @return The rewards, reused by the next step
+	 */
+	public float[] getRewards() {
+		return rewards;
+	}
+
+	/**
+	 * Get which games' episodes ended in the last step. Those games
+	 * have already been started again.
+	 *
+	 * @return True for each game whose episode ended, reused by the next step
+	 */
+	public boolean[] getDones() {
+		return dones;
+	}
+
+	/**
+	 * Get the observation of every game after the last step
+	 *
+	 * @return The observations, reused by the next step
+	 */
+	public float[] getObservations() {
+		return observations;
+	}
+
+	/**
+	 * Get the number of games in the batch
+	 *
+	 * @return The number of games
+	 */
+	public int size() {
+		return games.length;
+	}
+
+	/**
+	 * The task stepping a run of games, splitting in half until the
+	 * run is short enough to step directly
+	 */
+	private class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** The first game in the run */
+		private int start;
+		/** The game after the last in the run */
+		private int end;
+
+		/**
+		 * Create a new task
+		 *
+		 * @param start The first game in the run
+		 * @param end The game after the last in the run
+		 */
+		StepTask(int start,int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute() {
+			if (end - start <= GAMES_PER_TASK) {
+				for (int i=start;i<end;i++) {
+					stepGame(i);
+				}
+				return;
+			}
+
+			int middle = (start + end) >>> 1;
+			invokeAll(new StepTask(start,middle),new StepTask(middle,end));
+		}
+	}
+
+	/**
+	 * Measure the throughput of a batch of games played by random
+	 * actions
+	 *
+	 * @param argv The number of games and the number of seconds to run for
+	 */
+	public static void main(String argv[]) {
+		int count = argv.length > 0 ? Integer.parseInt(argv[0]) : 64;
+		long seconds = argv.length > 1 ? Long.parseLong(argv[1]) : 10;
+
+		BatchEnvironment environment = new BatchEnvironment(count,1,4);
+		Random random = new Random(2);
+		int[] actions = new int[count];
+		long steps = 0;
+		long episodes = 0;
+
+		long start = System.nanoTime();
+		long end = start + (seconds * 1000000000L);
+		while (System.nanoTime() < end) {
+			for (int i=0;i<count;i++) {
+				actions[i] = random.nextInt(8);
+			}
+			environment.step(actions);
+			for (int i=0;i<count;i++) {
+				if (environment.getDones()[i]) {
+					episodes++;
+				}
+			}
+			steps++;
+		}
+
+		double elapsed = (System.nanoTime() - start) / 1000000000.0;
+		System.out.println(count+" games on "+environment.pool.getParallelism()+" threads: "+
+				(int) ((steps * count) / elapsed)+" game steps/sec, "+
+				(int) ((steps * count * environment.updatesPerStep) / elapsed)+" ticks/sec, "+
+				episodes+" episodes");
+	}
+}
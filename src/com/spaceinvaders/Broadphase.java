@@ -0,0 +1,20 @@
+package com.spaceinvaders;
+
+/**
+ * The first stage of collision detection. A broadphase is given all
+ * the entities in the game and is responsible for cheaply working out
+ * which pairs of entities might be touching. Only those candidate pairs
+ * are handed on to be checked properly, which saves us comparing every
+ * entity against every other entity each loop.
+ *
+ */
+public interface Broadphase {
+	/**
+	 * Find the pairs of entities that may be colliding. Each candidate
+	 * pair is reported to the listener exactly once.
+	 *
+	 * @param world The world holding the entities to consider
+	 * @param listener The listener to be notified of each candidate pair
+	 */
+	public void findPairs(EntityWorld world, PairListener listener);
+}
@@ -0,0 +1,23 @@
+package com.spaceinvaders;
+
+/**
+ * The simplest possible broadphase, every entity is paired with
+ * every other entity. This is the way collisions were originally
+ * resolved and is kept around so the two can be compared.
+ *
+ */
+public class BruteForceBroadphase implements Broadphase {
+	/**
+	 * Report every pair of entities in the world
+	 *
+	 * @param world The world holding the entities to consider
+	 * @param listener The listener to be notified of each pair
+	 */
+	public void findPairs(EntityWorld world, PairListener listener) {
+		for (int p=0;p<world.size();p++) {
+			for (int s=p+1;s<world.size();s++) {
+				listener.pair(world,p,s);
+			}
+		}
+	}
+}
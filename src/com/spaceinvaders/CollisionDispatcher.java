@@ -0,0 +1,138 @@
+package com.spaceinvaders;
+
+/**
+ * Resolves the candidate pairs found by the broadphase. Pairs of
+ * entities whose collision layers aren't interested in each other are
+ * skipped straight away. The rest are checked properly and, if they
+ * collide, passed to the handler registered for their pair of layers.
+ * <p>
+ * The dispatcher also counts how many pairs it was given, how many it
+ * was able to skip and how many collided so we can see how much
+ * work the layers are saving us.
+ *
+ */
+public class CollisionDispatcher implements PairListener {
+	/** The handlers for each pair of layers, indexed [layer][layer] */
+	private CollisionHandler[][] handlers = new CollisionHandler[CollisionLayer.COUNT][CollisionLayer.COUNT];
+	/** True if the entities should be handed to the handler in the opposite order */
+	private boolean[][] swapped = new boolean[CollisionLayer.COUNT][CollisionLayer.COUNT];
+	/** The check used to decide if a candidate pair really collided */
+	private Narrowphase narrowphase;
+	/** The number of pairs given to us since the counters were reset */
+	private int pairsConsidered;
+	/** The number of pairs skipped because their layers don't interact */
+	private int pairsSkipped;
+	/** The number of pairs that collided */
+	private int collisions;
+
+	/**
+	 * Create a new dispatcher
+	 *
+	 * @param narrowphase The check used to decide if a candidate pair really collided
+	 */
+	public CollisionDispatcher(Narrowphase narrowphase) {
+		this.narrowphase = narrowphase;
+	}
+
+	/**
+	 * Register the handler to call when entities on the two
+	 * layers given collide.
+	 *
+	 * @param first The layer of the first entity given to the handler
+	 * @param second The layer of the second entity given to the handler
+	 * @param handler The handler to call
+	 */
+	public void register(int first,int second,CollisionHandler handler) {
+		handlers[first][second] = handler;
+		swapped[first][second] = false;
+		if (first != second) {
+			handlers[second][first] = handler;
+			swapped[second][first] = true;
+		}
+	}
+
+	/**
+	 * Check a candidate pair and dispatch it to the right handler
+	 * if the entities collide
+	 *
+	 * @param world The world holding the entities
+	 * @param me The slot of the first entity in the pair
+	 * @param him The slot of the second entity in the pair
+	 */
+	public void pair(EntityWorld world, int me, int him) {
+		pairsConsidered++;
+
+		// if neither entity is interested in the other's layer there's
+		// no point doing any bounds checks
+		int myLayer = world.layer[me];
+		int hisLayer = world.layer[him];
+		if (((world.mask[me] & CollisionLayer.bit(hisLayer)) == 0) &&
+			((world.mask[him] & CollisionLayer.bit(myLayer)) == 0)) {
+			pairsSkipped++;
+			return;
+		}
+
+		CollisionHandler handler = handlers[myLayer][hisLayer];
+		if (handler == null) {
+			pairsSkipped++;
+			return;
+		}
+
+		// entities already on their way out can't hit anything else
+		if (world.isRemoved(me) || world.isRemoved(him)) {
+			pairsSkipped++;
+			return;
+		}
+
+		SpriteShapes shapes = SpriteShapes.get();
+		if (!narrowphase.test(world.prevX[me],world.prevY[me],world.x[me],world.y[me],shapes.getMask(world.sprite[me]),
+							  world.prevX[him],world.prevY[him],world.x[him],world.y[him],shapes.getMask(world.sprite[him]),
+							  ((world.flags[me] | world.flags[him]) & EntityWorld.SWEPT) != 0)) {
+			return;
+		}
+
+		collisions++;
+		if (swapped[myLayer][hisLayer]) {
+			handler.collided(world.getOwner(him),world.getOwner(me));
+		} else {
+			handler.collided(world.getOwner(me),world.getOwner(him));
+		}
+	}
+
+	/**
+	 * Reset the pair counters, normally done at the start of each loop
+	 */
+	public void resetCounters() {
+		pairsConsidered = 0;
+		pairsSkipped = 0;
+		collisions = 0;
+	}
+
+	/**
+	 * Get the number of pairs considered since the counters were reset
+	 *
+	 * @return The number of pairs considered
+	 */
+	public int getPairsConsidered() {
+		return pairsConsidered;
+	}
+
+	/**
+	 * Get the number of pairs skipped without a bounds check since
+	 * the counters were reset
+	 *
+	 * @return The number of pairs skipped
+	 */
+	public int getPairsSkipped() {
+		return pairsSkipped;
+	}
+
+	/**
+	 * Get the number of pairs that collided since the counters were reset
+	 *
+	 * @return The number of collisions
+	 */
+	public int getCollisions() {
+		return collisions;
+	}
+}
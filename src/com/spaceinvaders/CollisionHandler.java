@@ -0,0 +1,18 @@
+package com.spaceinvaders;
+
+/**
+ * The action to take when entities on two particular collision
+ * layers collide. Handlers are registered with the collision dispatcher
+ * against a pair of layers, so a handler always knows what sort of
+ * entities it has been given.
+ *
+ */
+public interface CollisionHandler {
+	/**
+	 * Notification that two entities have collided
+	 *
+	 * @param me The entity on the first layer the handler was registered for
+	 * @param him The entity on the second layer the handler was registered for
+	 */
+	public void collided(Entity me, Entity him);
+}
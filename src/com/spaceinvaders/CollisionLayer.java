@@ -0,0 +1,33 @@
+package com.spaceinvaders;
+
+/**
+ * The collision layers that entities can be placed on. Each entity
+ * declares the layer it lives on and a mask of the layers it is
+ * interested in colliding with. Pairs of entities that aren't interested
+ * in each other are never checked for collision at all.
+ *
+ */
+public class CollisionLayer {
+	/** The layer for the player's ship */
+	public static final int SHIP = 0;
+	/** The layer for the aliens */
+	public static final int ALIEN = 1;
+	/** The layer for the obstacles in space */
+	public static final int OBSTACLE = 2;
+	/** The layer for shots fired by the player */
+	public static final int PLAYER_SHOT = 3;
+	/** The layer for shots fired by the aliens */
+	public static final int ALIEN_SHOT = 4;
+	/** The number of layers */
+	public static final int COUNT = 5;
+
+	/**
+	 * Get the mask bit that represents a given layer
+	 *
+	 * @param layer The layer to get the bit for
+	 * @return The mask bit for the layer
+	 */
+	public static int bit(int layer) {
+		return 1 << layer;
+	}
+}
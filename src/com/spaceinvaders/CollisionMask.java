@@ -0,0 +1,151 @@
+package com.spaceinvaders;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A record of which pixels of a sprite are solid. Each row of the
+ * sprite is packed into an array of longs, one bit per pixel, so two
+ * masks can be compared 64 pixels at a time rather than reading
+ * pixels back out of the images.
+ * <p>
+ * Pixel x of a row is held in bit (x % 64) of word (x / 64).
+ *
+ */
+public class CollisionMask {
+	/** The width of the mask in pixels */
+	private int width;
+	/** The height of the mask in pixels */
+	private int height;
+	/** The solid pixels of each row, packed 64 to a word */
+	private long[][] rows;
+
+	/**
+	 * Create a new mask from the packed rows given
+	 *
+	 * @param width The width of the mask in pixels
+	 * @param height The height of the mask in pixels
+	 * @param rows The solid pixels of each row, packed 64 to a word
+	 */
+	public CollisionMask(int width,int height,long[][] rows) {
+		this.width = width;
+		this.height = height;
+		this.rows = rows;
+	}
+
+	/**
+	 * Build a mask from an image. Any pixel that isn't completely
+	 * transparent is considered solid.
+	 *
+	 * @param image The image to build the mask from
+	 * @return The mask for the image
+	 */
+	public static CollisionMask fromImage(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int words = (width + 63) / 64;
+		int[] pixels = image.getRGB(0,0,width,height,null,0,width);
+		long[][] rows = new long[height][words];
+
+		for (int y=0;y<height;y++) {
+			long[] row = rows[y];
+			for (int x=0;x<width;x++) {
+				if ((pixels[(y*width)+x] >>> 24) != 0) {
+					row[x >> 6] |= 1L << (x & 63);
+				}
+			}
+		}
+
+		return new CollisionMask(width,height,rows);
+	}
+
+	/**
+	 * Get the width of the mask
+	 *
+	 * @return The width of the mask in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the mask
+	 *
+	 * @return The height of the mask in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Check if this mask has any solid pixels in common with another
+	 * mask placed at an offset from it.
+	 *
+	 * @param other The other mask to check against
+	 * @param offsetX The x location of the other mask relative to this one
+	 * @param offsetY The y location of the other mask relative to this one
+	 * @return True if at least one solid pixel overlaps
+	 */
+	public boolean overlaps(CollisionMask other,int offsetX,int offsetY) {
+		// work out the rows and columns the two masks share, in our
+		// coordinates
+		int top = Math.max(0,offsetY);
+		int bottom = Math.min(height,offsetY+other.height);
+		int left = Math.max(0,offsetX);
+		int right = Math.min(width,offsetX+other.width);
+		if ((top >= bottom) || (left >= right)) {
+			return false;
+		}
+
+		int firstWord = left >> 6;
+		int lastWord = (right - 1) >> 6;
+
+		for (int y=top;y<bottom;y++) {
+			long[] mine = rows[y];
+			long[] his = other.rows[y-offsetY];
+
+			// line up 64 of his pixels against each of our words and
+			// look for any bits in common. Bits outside either sprite
+			// are always clear so there's no need to trim the ends
+			for (int w=firstWord;w<=lastWord;w++) {
+				if ((mine[w] & bitsFrom(his,(w << 6) - offsetX)) != 0) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Read 64 bits from a packed row starting at any bit position.
+	 * Bits before the start or after the end of the row read as clear.
+	 *
+	 * @param row The packed row to read from
+	 * @param start The index of the first bit to read, may be negative
+	 * @return The 64 bits starting at the given position
+	 */
+	private static long bitsFrom(long[] row,int start) {
+		int word = start >> 6;
+		int shift = start & 63;
+
+		long low = wordAt(row,word) >>> shift;
+		if (shift == 0) {
+			return low;
+		}
+		return low | (wordAt(row,word+1) << (64 - shift));
+	}
+
+	/**
+	 * Get a word from a packed row, treating words outside the row as clear
+	 *
+	 * @param row The packed row to read from
+	 * @param word The index of the word to read
+	 * @return The word, or zero if it's outside the row
+	 */
+	private static long wordAt(long[] row,int word) {
+		if ((word < 0) || (word >= row.length)) {
+			return 0;
+		}
+		return row[word];
+	}
+}
@@ -0,0 +1,44 @@
+package com.spaceinvaders;
+
+/**
+ * The system responsible for finding and resolving collisions between
+ * the entities in the world. A broadphase finds the candidate pairs and
+ * the dispatcher checks each one and calls the right handler.
+ *
+ */
+public class CollisionSystem {
+	/** The broadphase used to find pairs of entities that might be colliding */
+	private Broadphase broadphase;
+	/** The dispatcher that resolves each candidate pair */
+	private CollisionDispatcher dispatcher;
+
+	/**
+	 * Create a new collision system
+	 *
+	 * @param broadphase The broadphase used to find candidate pairs
+	 * @param dispatcher The dispatcher used to resolve them
+	 */
+	public CollisionSystem(Broadphase broadphase,CollisionDispatcher dispatcher) {
+		this.broadphase = broadphase;
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Find and resolve all the collisions in the world
+	 *
+	 * @param world The world holding the entities
+	 */
+	public void collide(EntityWorld world) {
+		dispatcher.resetCounters();
+		broadphase.findPairs(world,dispatcher);
+	}
+
+	/**
+	 * Get the dispatcher resolving pairs for this system
+	 *
+	 * @return The collision dispatcher
+	 */
+	public CollisionDispatcher getDispatcher() {
+		return dispatcher;
+	}
+}
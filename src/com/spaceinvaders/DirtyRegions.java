@@ -0,0 +1,117 @@
+package com.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+/**
+ * The areas of the screen drawn over in recent frames. Each frame only
+ * the areas drawn over in the frames still held in the back buffer need
+ * to be cleared back to the background, rather than the whole screen.
+ * <p>
+ * How many frames back the back buffer holds depends on how the buffers
+ * are flipped: a copied back buffer holds the last frame, swapped page
+ * flipping holds the frame before that. The areas from both are kept
+ * so either works.
+ * <p>
+ * Areas are kept as plain arrays that grow as needed, so marking areas
+ * creates no garbage.
+ *
+ */
+public class DirtyRegions {
+	/** The number of frames of areas kept */
+	private static final int FRAMES = 3;
+
+	/** The width of the screen, areas are clipped to it */
+	private int width;
+	/** The height of the screen, areas are clipped to it */
+	private int height;
+	/** The x location of each area for each frame */
+	private int[][] x = new int[FRAMES][256];
+	/** The y location of each area for each frame */
+	private int[][] y = new int[FRAMES][256];
+	/** The width of each area for each frame */
+	private int[][] w = new int[FRAMES][256];
+	/** The height of each area for each frame */
+	private int[][] h = new int[FRAMES][256];
+	/** The number of areas for each frame */
+	private int[] count = new int[FRAMES];
+	/** The frame being marked */
+	private int current;
+
+	/**
+	 * Create a new set of dirty regions
+	 *
+	 * @param width The width of the screen
+	 * @param height The height of the screen
+	 */
+	public DirtyRegions(int width,int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Mark an area as drawn over in the current frame
+	 *
+	 * @param ax The x location of the area
+	 * @param ay The y location of the area
+	 * @param aw The width of the area
+	 * @param ah The height of the area
+	 */
+	public void add(int ax,int ay,int aw,int ah) {
+		// clip the area to the screen
+		if (ax < 0) {
+			aw += ax;
+			ax = 0;
+		}
+		if (ay < 0) {
+			ah += ay;
+			ay = 0;
+		}
+		aw = Math.min(aw,width - ax);
+		ah = Math.min(ah,height - ay);
+		if ((aw <= 0) || (ah <= 0)) {
+			return;
+		}
+
+		int n = count[current];
+		if (n == x[current].length) {
+			x[current] = Arrays.copyOf(x[current],n*2);
+			y[current] = Arrays.copyOf(y[current],n*2);
+			w[current] = Arrays.copyOf(w[current],n*2);
+			h[current] = Arrays.copyOf(h[current],n*2);
+		}
+		x[current][n] = ax;
+		y[current][n] = ay;
+		w[current][n] = aw;
+		h[current][n] = ah;
+		count[current] = n+1;
+	}
+
+	/**
+	 * Clear the areas drawn over in the frames that could still be in
+	 * the back buffer back to the background
+	 *
+	 * @param g The graphics context of the back buffer
+	 * @param background The background to clear to
+	 * @return The number of pixels cleared
+	 */
+	public long clear(Graphics2D g,BackgroundLayer background) {
+		long pixels = 0;
+		for (int f=1;f<FRAMES;f++) {
+			int frame = (current + FRAMES - f) % FRAMES;
+			for (int i=0;i<count[frame];i++) {
+				background.draw(g,x[frame][i],y[frame][i],w[frame][i],h[frame][i]);
+				pixels += w[frame][i] * h[frame][i];
+			}
+		}
+		return pixels;
+	}
+
+	/**
+	 * Move on to the next frame, forgetting the oldest
+	 */
+	public void nextFrame() {
+		current = (current + 1) % FRAMES;
+		count[current] = 0;
+	}
+}
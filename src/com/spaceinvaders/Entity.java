@@ -1,152 +1,176 @@
 package com.spaceinvaders;
 
-import java.awt.Dimension;
-import java.awt.Graphics;
-import java.awt.Rectangle;
-import java.awt.Toolkit;
-
 /**
  * An entity represents any element that appears in the game. The
- * entity is responsible for resolving collisions and movement
- * based on a set of properties defined either by subclass or externally.
- * 
+ * state of every entity is held in the entity world, an entity object
+ * is just an adapter onto its slot there. Subclasses describe their
+ * behaviour by setting flags, animations and collision layers in the
+ * world, which the systems then act on, and are called back for the
+ * game events they care about.
+ *
  * Note that doubles are used for positions. This may seem strange
  * given that pixels locations are integers. However, using double means
  * that an entity can move a partial pixel. It doesn't of course mean that
  * they will be display half way through a pixel but allows us not lose
  * accuracy as we move.
- * 
+ *
  */
 public abstract class Entity {
-	/** The current x location of this entity */ 
-	protected double x;
-	/** The current y location of this entity */
-	protected double y;
-	/** The sprite that represents this entity */
-	protected Sprite sprite;
-	/** The current speed of this entity horizontally (pixels/sec) */
-	protected double dx;
-	/** The current speed of this entity vertically (pixels/sec) */
-	protected double dy;
-	/** The rectangle used for this entity during collisions  resolution */
-	private Rectangle me = new Rectangle();
-	/** The rectangle used for other entities during collision resolution */
-	private Rectangle him = new Rectangle();
-	/** Variable to get the current screen size*/
-	protected Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-	
+	/** The world holding the state of this entity */
+	protected EntityWorld world;
+	/** The slot of this entity in the world, or -1 once removed */
+	protected int slot;
+
 	/**
 	 * Construct a entity based on a sprite image and a location.
-	 * 
+	 *
+	 * @param world The world that will hold the state of this entity
 	 * @param ref The reference to the image to be displayed for this entity
+	 * @param type The type tag of this entity (@see EntityWorld)
  	 * @param x The initial x location of this entity
 	 * @param y The initial y location of this entity
 	 */
-	public Entity(String ref,int x,int y) {
-		this.sprite = SpriteStore.get().getSprite(ref);
-		this.x = x;
-		this.y = y;
+	public Entity(EntityWorld world,String ref,int type,int x,int y) {
+		this.world = world;
+		this.slot = world.add(this,type,SpriteShapes.get().getId(ref),x,y);
+	}
+
+	/**
+	 * Get the slot of this entity in the world
+	 *
+	 * @return The slot of this entity, or -1 if it has been removed
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * Get the handle of this entity, which unlike its slot stays the
+	 * same for as long as it's in the world (@see EntityWorld)
+	 *
+	 * @return The handle of this entity
+	 */
+	public int getHandle() {
+		return world.getHandle(slot);
 	}
-	
+
 	/**
-	 * Request that this entity move itself based on a certain ammount
-	 * of time passing.
-	 * 
-	 * @param delta The ammount of time that has passed in milliseconds
+	 * Notification from the world that this entity has moved slot
+	 *
+	 * @param slot The new slot of this entity, or -1 if it has been removed
 	 */
-	public void move(long delta) {
-		// update the location of the entity based on move speeds
-		x += (delta * dx) / 1000;
-		y += (delta * dy) / 1000;
+	void setSlot(int slot) {
+		this.slot = slot;
 	}
-	
+
 	/**
 	 * Set the horizontal speed of this entity
-	 * 
+	 *
 	 * @param dx The horizontal speed of this entity (pixels/sec)
 	 */
 	public void setHorizontalMovement(double dx) {
-		this.dx = dx;
+		world.dx[slot] = dx;
 	}
 
 	/**
 	 * Set the vertical speed of this entity
-	 * 
-	 * @param dx The vertical speed of this entity (pixels/sec)
+	 *
+	 * @param dy The vertical speed of this entity (pixels/sec)
 	 */
 	public void setVerticalMovement(double dy) {
-		this.dy = dy;
+		world.dy[slot] = dy;
 	}
-	
+
 	/**
 	 * Get the horizontal speed of this entity
-	 * 
+	 *
 	 * @return The horizontal speed of this entity (pixels/sec)
 	 */
 	public double getHorizontalMovement() {
-		return dx;
+		return world.dx[slot];
 	}
 
 	/**
 	 * Get the vertical speed of this entity
-	 * 
+	 *
 	 * @return The vertical speed of this entity (pixels/sec)
 	 */
 	public double getVerticalMovement() {
-		return dy;
-	}
-	
-	/**
-	 * Draw this entity to the graphics context provided
-	 * 
-	 * @param g The graphics context on which to draw
-	 */
-	public void draw(Graphics g) {
-		sprite.draw(g,(int) x,(int) y);
+		return world.dy[slot];
 	}
-	
+
 	/**
 	 * Do the logic associated with this entity. This method
 	 * will be called periodically based on game events
 	 */
 	public void doLogic() {
 	}
-	
+
 	/**
 	 * Get the x location of this entity
-	 * 
+	 *
 	 * @return The x location of this entity
 	 */
 	public int getX() {
-		return (int) x;
+		return (int) world.x[slot];
 	}
 
 	/**
 	 * Get the y location of this entity
-	 * 
+	 *
 	 * @return The y location of this entity
 	 */
 	public int getY() {
-		return (int) y;
+		return (int) world.y[slot];
+	}
+
+	/**
+	 * Get the width of this entity, taken from its current sprite
+	 *
+	 * @return The width of this entity in pixels
+	 */
+	public int getWidth() {
+		return world.width[slot];
+	}
+
+	/**
+	 * Get the height of this entity, taken from its current sprite
+	 *
+	 * @return The height of this entity in pixels
+	 */
+	public int getHeight() {
+		return world.height[slot];
 	}
-	
+
 	/**
-	 * Check if this entity collised with another.
-	 * 
-	 * @param other The other entity to check collision against
-	 * @return True if the entities collide with each other
+	 * Set the behaviour flags of this entity
+	 *
+	 * @param flags The flags to set (@see EntityWorld)
 	 */
-	public boolean collidesWith(Entity other) {
-		me.setBounds((int) x,(int) y,sprite.getWidth(),sprite.getHeight());
-		him.setBounds((int) other.x,(int) other.y,other.sprite.getWidth(),other.sprite.getHeight());
+	protected void setFlags(int flags) {
+		world.flags[slot] = flags;
+	}
 
-		return me.intersects(him);
+	/**
+	 * Set the collision layer this entity lives on and the mask of
+	 * collision layers it is interested in colliding with
+	 *
+	 * @param layer The collision layer of this entity (@see CollisionLayer)
+	 * @param mask The mask of layers built using CollisionLayer.bit()
+	 */
+	protected void setCollisionLayer(int layer,int mask) {
+		world.layer[slot] = layer;
+		world.mask[slot] = mask;
 	}
-	
+
 	/**
-	 * Notification that this entity collided with another.
-	 * 
-	 * @param other The entity with which this entity collided.
+	 * Start this entity playing an animation defined in the world
+	 *
+	 * @param animation The id of the animation to play
 	 */
-	public abstract void collidedWith(Entity other);
+	protected void setAnimation(int animation) {
+		world.animation[slot] = animation;
+		world.frame[slot] = 0;
+		world.frameTime[slot] = 0;
+	}
 }
@@ -0,0 +1,462 @@
+package com.spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * The store for the state of every entity in the game. Rather than
+ * each entity holding its own fields, the state is kept in parallel
+ * arrays of primitives indexed by a slot number. The systems (movement,
+ * animation, collision and rendering) then run over these arrays in
+ * tight loops without having to visit an object per entity.
+ * <p>
+ * Entity subclasses are a thin adapter on top of the world. Each one
+ * owns a slot, configures its behaviour through the flags and
+ * animations here, and is called back only for game events such as
+ * collisions and logic updates.
+ * <p>
+ * Live entities are always packed into the first slots so the systems
+ * never skip gaps. Removing an entity moves the last live entity into
+ * its slot, so removal costs the same however big the world is. As slots
+ * move around, anything that needs to keep hold of an entity uses its
+ * handle, a stable id plus a generation count that changes when the id
+ * is reused so stale handles can be spotted.
+ * <p>
+ * Entities added or removed during a loop don't take effect straight
+ * away. New entities wait just past the live slots and removed ones stay
+ * in place (marked as removed) until commit() is called, which happens
+ * at a single point in each loop.
+ * <p>
+ * Fields are package visible so the systems can get at the arrays
+ * directly, anything outside the package should go through an Entity.
+ *
+ */
+public class EntityWorld {
+	/** The type tag for the player's ship */
+	public static final int SHIP = 0;
+	/** The type tag for the aliens */
+	public static final int ALIEN = 1;
+	/** The type tag for the obstacles */
+	public static final int OBSTACLE = 2;
+
+	/** Flag indicating the entity won't move past the edges of the play area */
+	public static final int STOP_AT_EDGES = 1;
+	/** Flag indicating the entity is placed relative to the alien formation (@see AlienFormation) */
+	public static final int IN_FORMATION = 2;
+	/** Flag indicating the whole path of the entity is checked for collisions */
+	public static final int SWEPT = 4;
+	/** Flag indicating the entity has been marked for removal */
+	public static final int REMOVED = 8;
+
+	/** The number of bits of a handle used for the id */
+	private static final int ID_BITS = 20;
+	/** The mask to pull the id out of a handle */
+	private static final int ID_MASK = (1 << ID_BITS) - 1;
+
+	/** The number of live slots */
+	int count;
+	/** The number of entities added this loop, waiting in the slots after the live ones */
+	private int spawnCount;
+	/** The x location of each entity */
+	double[] x = new double[64];
+	/** The y location of each entity */
+	double[] y = new double[64];
+	/** The x location of each entity at the start of the loop */
+	double[] prevX = new double[64];
+	/** The y location of each entity at the start of the loop */
+	double[] prevY = new double[64];
+	/** The horizontal speed of each entity (pixels/sec) */
+	double[] dx = new double[64];
+	/** The vertical speed of each entity (pixels/sec) */
+	double[] dy = new double[64];
+	/** The x offset of each entity from the origin of its formation */
+	double[] offsetX = new double[64];
+	/** The y offset of each entity from the origin of its formation */
+	double[] offsetY = new double[64];
+	/** The sprite id currently displayed for each entity */
+	int[] sprite = new int[64];
+	/** The width of each entity's current sprite */
+	int[] width = new int[64];
+	/** The height of each entity's current sprite */
+	int[] height = new int[64];
+	/** The type tag of each entity */
+	int[] type = new int[64];
+	/** The behaviour flags of each entity */
+	int[] flags = new int[64];
+	/** The collision layer of each entity */
+	int[] layer = new int[64];
+	/** The mask of collision layers each entity collides with */
+	int[] mask = new int[64];
+	/** The animation each entity is playing, or -1 for none */
+	int[] animation = new int[64];
+	/** The current frame of each entity's animation */
+	int[] frame = new int[64];
+	/** The time since each entity's last frame change (ms) */
+	long[] frameTime = new long[64];
+	/** The entity adapter that owns each slot */
+	Entity[] owner = new Entity[64];
+	/** The id of the entity in each slot */
+	private int[] id = new int[64];
+
+	/** The slot each id is currently in, or -1 if the id is free */
+	private int[] slotOf = new int[64];
+	/** The generation of each id, increased each time the id is freed */
+	private int[] generation = new int[64];
+	/** The ids available for reuse */
+	private int[] freeIds = new int[64];
+	/** The number of ids available for reuse */
+	private int freeIdCount;
+	/** The number of ids that have ever been handed out */
+	private int idCount;
+
+	/** The handles of the entities marked for removal this loop */
+	private int[] removals = new int[64];
+	/** The number of entities marked for removal */
+	private int removalCount;
+
+	/** The sprite ids of the frames in each animation */
+	int[][] animationFrames = new int[8][];
+	/** The duration of each frame in each animation (ms) */
+	long[] animationFrameDuration = new long[8];
+	/** The number of animations defined */
+	private int animationCount;
+
+	/** The x location past which entities stop at the left edge of the play area */
+	double leftEdge;
+	/** The x location past which entities stop at the right edge of the play area */
+	double rightEdge;
+
+	/**
+	 * Set the edges of the play area that entities stop at
+	 *
+	 * @param left The x location of the left edge
+	 * @param right The x location of the right edge
+	 */
+	public void setEdges(double left,double right) {
+		leftEdge = left;
+		rightEdge = right;
+	}
+
+	/**
+	 * Define an animation that entities can play
+	 *
+	 * @param frames The sprite ids of each frame
+	 * @param frameDuration The time each frame is displayed for (ms)
+	 * @return The id of the new animation
+	 */
+	public int defineAnimation(int[] frames,long frameDuration) {
+		if (animationCount == animationFrames.length) {
+			animationFrames = Arrays.copyOf(animationFrames,animationCount*2);
+			animationFrameDuration = Arrays.copyOf(animationFrameDuration,animationCount*2);
+		}
+		animationFrames[animationCount] = frames;
+		animationFrameDuration[animationCount] = frameDuration;
+
+		return animationCount++;
+	}
+
+	/**
+	 * Add a new entity to the world. The entity isn't live until
+	 * commit() is called, but its slot can be used straight away.
+	 *
+	 * @param entity The adapter that will own the slot, may be null
+	 * @param type The type tag of the entity
+	 * @param spriteId The sprite to display for the entity
+	 * @param x The initial x location of the entity
+	 * @param y The initial y location of the entity
+	 * @return The slot allocated to the entity
+	 */
+	public int add(Entity entity,int type,int spriteId,double x,double y) {
+		int slot = count + spawnCount;
+		if (slot == this.x.length) {
+			grow(slot*2);
+		}
+		spawnCount++;
+		assignId(slot);
+
+		this.x[slot] = x;
+		this.y[slot] = y;
+		prevX[slot] = x;
+		prevY[slot] = y;
+		dx[slot] = 0;
+		dy[slot] = 0;
+		offsetX[slot] = 0;
+		offsetY[slot] = 0;
+		this.type[slot] = type;
+		flags[slot] = 0;
+		layer[slot] = 0;
+		mask[slot] = 0;
+		animation[slot] = -1;
+		frame[slot] = 0;
+		frameTime[slot] = 0;
+		owner[slot] = entity;
+		setSprite(slot,spriteId);
+
+		return slot;
+	}
+
+	/**
+	 * Change the sprite displayed for an entity
+	 *
+	 * @param slot The slot of the entity
+	 * @param spriteId The sprite to display
+	 */
+	public void setSprite(int slot,int spriteId) {
+		SpriteShapes shapes = SpriteShapes.get();
+		sprite[slot] = spriteId;
+		width[slot] = shapes.getWidth(spriteId);
+		height[slot] = shapes.getHeight(spriteId);
+	}
+
+	/**
+	 * Get the handle of the entity in a slot. Unlike the slot, the
+	 * handle doesn't change for as long as the entity is in the world.
+	 *
+	 * @param slot The slot of the entity
+	 * @return The handle of the entity
+	 */
+	public int getHandle(int slot) {
+		int entityId = id[slot];
+		return (generation[entityId] << ID_BITS) | entityId;
+	}
+
+	/**
+	 * Get the slot currently holding the entity with a given handle
+	 *
+	 * @param handle The handle of the entity
+	 * @return The slot of the entity, or -1 if it's no longer in the world
+	 */
+	public int getSlot(int handle) {
+		int entityId = handle & ID_MASK;
+		if ((entityId >= idCount) || (generation[entityId] != (handle >>> ID_BITS))) {
+			return -1;
+		}
+		return slotOf[entityId];
+	}
+
+	/**
+	 * Mark an entity for removal. It stays in the world until the
+	 * next commit().
+	 *
+	 * @param slot The slot of the entity to remove
+	 */
+	public void remove(int slot) {
+		if ((flags[slot] & REMOVED) != 0) {
+			return;
+		}
+		flags[slot] |= REMOVED;
+
+		if (removalCount == removals.length) {
+			removals = Arrays.copyOf(removals,removalCount*2);
+		}
+		removals[removalCount++] = getHandle(slot);
+	}
+
+	/**
+	 * Check if an entity has been marked for removal
+	 *
+	 * @param slot The slot of the entity
+	 * @return True if the entity is being removed
+	 */
+	public boolean isRemoved(int slot) {
+		return (flags[slot] & REMOVED) != 0;
+	}
+
+	/**
+	 * Make the changes requested during this loop take effect. Entities
+	 * added become live, then each entity marked for removal is replaced
+	 * by the last live entity. This costs time in proportion to the number
+	 * of entities added and removed, not the size of the world.
+	 */
+	public void commit() {
+		count += spawnCount;
+		spawnCount = 0;
+
+		for (int i=0;i<removalCount;i++) {
+			int removedId = removals[i] & ID_MASK;
+			int slot = slotOf[removedId];
+			if (owner[slot] != null) {
+				owner[slot].setSlot(-1);
+			}
+
+			// fill the gap with the last live entity
+			int last = --count;
+			if (slot != last) {
+				moveSlot(last,slot);
+			}
+			owner[last] = null;
+
+			freeId(removedId);
+		}
+		removalCount = 0;
+	}
+
+	/**
+	 * Remove every entity from the world straight away
+	 */
+	public void clear() {
+		int total = count + spawnCount;
+		for (int slot=0;slot<total;slot++) {
+			if (owner[slot] != null) {
+				owner[slot].setSlot(-1);
+			}
+			owner[slot] = null;
+			freeId(id[slot]);
+		}
+		count = 0;
+		spawnCount = 0;
+		removalCount = 0;
+	}
+
+	/**
+	 * Set the number of live entities straight away, used when putting
+	 * back a saved state. Every entity in the world is dropped and the
+	 * slots up to the new count are given new ids but nothing else, the
+	 * caller fills them in and gives each an owner with adopt().
+	 *
+	 * @param newCount The number of live entities
+	 */
+	void reset(int newCount) {
+		clear();
+		if (newCount > x.length) {
+			grow(Math.max(newCount,x.length*2));
+		}
+		for (int slot=0;slot<newCount;slot++) {
+			assignId(slot);
+		}
+		count = newCount;
+	}
+
+	/**
+	 * Make an adapter that isn't in the world the owner of a slot
+	 *
+	 * @param slot The slot to take over
+	 * @param entity The adapter to own the slot
+	 */
+	void adopt(int slot,Entity entity) {
+		owner[slot] = entity;
+		entity.setSlot(slot);
+	}
+
+	/**
+	 * Give the entity in a slot an id, reusing a freed one if we can
+	 *
+	 * @param slot The slot to give an id
+	 */
+	private void assignId(int slot) {
+		int newId;
+		if (freeIdCount > 0) {
+			newId = freeIds[--freeIdCount];
+		} else {
+			if (idCount == slotOf.length) {
+				slotOf = Arrays.copyOf(slotOf,idCount*2);
+				generation = Arrays.copyOf(generation,idCount*2);
+				freeIds = Arrays.copyOf(freeIds,idCount*2);
+			}
+			newId = idCount++;
+		}
+		id[slot] = newId;
+		slotOf[newId] = slot;
+	}
+
+	/**
+	 * Return an id for reuse. Its generation moves on so any handles
+	 * still using it will no longer match.
+	 *
+	 * @param freed The id to free
+	 */
+	private void freeId(int freed) {
+		slotOf[freed] = -1;
+		generation[freed] = (generation[freed] + 1) & (-1 >>> ID_BITS);
+		freeIds[freeIdCount++] = freed;
+	}
+
+	/**
+	 * Get the number of live entities in the world
+	 *
+	 * @return The number of live entities in the world
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Get the type tag of an entity
+	 *
+	 * @param slot The slot of the entity
+	 * @return The type tag of the entity
+	 */
+	public int getType(int slot) {
+		return type[slot];
+	}
+
+	/**
+	 * Get the adapter that owns a slot
+	 *
+	 * @param slot The slot of the entity
+	 * @return The entity that owns the slot, or null if it has none
+	 */
+	public Entity getOwner(int slot) {
+		return owner[slot];
+	}
+
+	/**
+	 * Move all the state of an entity from one slot to another
+	 *
+	 * @param from The slot to move from
+	 * @param to The slot to move to
+	 */
+	private void moveSlot(int from,int to) {
+		x[to] = x[from];
+		y[to] = y[from];
+		prevX[to] = prevX[from];
+		prevY[to] = prevY[from];
+		dx[to] = dx[from];
+		dy[to] = dy[from];
+		offsetX[to] = offsetX[from];
+		offsetY[to] = offsetY[from];
+		sprite[to] = sprite[from];
+		width[to] = width[from];
+		height[to] = height[from];
+		type[to] = type[from];
+		flags[to] = flags[from];
+		layer[to] = layer[from];
+		mask[to] = mask[from];
+		animation[to] = animation[from];
+		frame[to] = frame[from];
+		frameTime[to] = frameTime[from];
+		owner[to] = owner[from];
+		id[to] = id[from];
+		slotOf[id[to]] = to;
+		if (owner[to] != null) {
+			owner[to].setSlot(to);
+		}
+	}
+
+	/**
+	 * Grow the arrays to hold more entities
+	 *
+	 * @param size The new number of slots
+	 */
+	private void grow(int size) {
+		x = Arrays.copyOf(x,size);
+		y = Arrays.copyOf(y,size);
+		prevX = Arrays.copyOf(prevX,size);
+		prevY = Arrays.copyOf(prevY,size);
+		dx = Arrays.copyOf(dx,size);
+		dy = Arrays.copyOf(dy,size);
+		offsetX = Arrays.copyOf(offsetX,size);
+		offsetY = Arrays.copyOf(offsetY,size);
+		sprite = Arrays.copyOf(sprite,size);
+		width = Arrays.copyOf(width,size);
+		height = Arrays.copyOf(height,size);
+		type = Arrays.copyOf(type,size);
+		flags = Arrays.copyOf(flags,size);
+		layer = Arrays.copyOf(layer,size);
+		mask = Arrays.copyOf(mask,size);
+		animation = Arrays.copyOf(animation,size);
+		frame = Arrays.copyOf(frame,size);
+		frameTime = Arrays.copyOf(frameTime,size);
+		owner = Arrays.copyOf(owner,size);
+		id = Arrays.copyOf(id,size);
+	}
+}
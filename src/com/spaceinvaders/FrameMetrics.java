@@ -0,0 +1,499 @@
+package com.spaceinvaders;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Times each phase of the game's updates and frames, so spikes in frame
+ * time can be put down to what caused them without a profiler attached.
+ * The time of every phase goes into a histogram (@see Histogram), along
+ * with the bytes allocated by each update and frame, and the number of
+ * each type of entity is kept after every update. The collision pairs
+ * skipped by each update and the background cleared by each frame are
+ * kept as well.
+ * <p>
+ * The phases of an update are INPUT (taking the commands and firing), 
+ * MOVE, COLLISION, ALIEN_FIRE, REMOVAL (applying the spawns and 
+ * removals) and LOGIC. The phases of a frame are DRAW and PRESENT 
+ * (showing the back buffer).
+ * <p>
+ * The statistics can be read over JMX once registered (@see 
+ * FrameMetricsMXBean), and every update and frame is also written as a
+ * JFR event (com.spaceinvaders.Update and com.spaceinvaders.Frame) when
+ * a flight recording is enabled for them.
+ * <p>
+ * Updates are timed from the simulation thread and frames from the 
+ * render thread, each phase only ever from one of them.
+ *
+ */
+public class FrameMetrics implements FrameMetricsMXBean {
+	/** The phase taking the commands for an update */
+	public static final int INPUT = 0;
+	/** The phase moving and animating the entities and shots */
+	public static final int MOVE = 1;
+	/** The phase finding and handling collisions */
+	public static final int COLLISION = 2;
+	/** The phase picking aliens to fire */
+	public static final int ALIEN_FIRE = 3;
+	/** The phase applying the spawns and removals of an update */
+	public static final int REMOVAL = 4;
+	/** The phase running the entities' own logic */
+	public static final int LOGIC = 5;
+	/** The phase drawing a frame into the back buffer */
+	public static final int DRAW = 6;
+	/** The phase showing the back buffer */
+	public static final int PRESENT = 7;
+	/** The name each phase is reported under */
+	private static final String[] PHASE_NAMES = {"input","move","collision","alienFire","removal","logic","draw","present"};
+	/** The name the metrics are registered under */
+	public static final String OBJECT_NAME = "com.spaceinvaders:type=FrameMetrics";
+
+	/** The thread management, used to measure allocation, or null if the JVM can't */
+	private static final com.sun.management.ThreadMXBean THREADS;
+	/** The event type of an update, checked before creating an event */
+	private static final EventType UPDATE_EVENT = EventType.getEventType(UpdateEvent.class);
+	/** The event type of a frame, checked before creating an event */
+	private static final EventType FRAME_EVENT = EventType.getEventType(FrameEvent.class);
+
+	static {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if ((threads instanceof com.sun.management.ThreadMXBean) && 
+				((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+			THREADS = (com.sun.management.ThreadMXBean) threads;
+			THREADS.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			THREADS = null;
+		}
+	}
+
+	/** The times of each phase */
+	private Histogram[] phases = new Histogram[PHASE_NAMES.length];
+	/** The bytes allocated by each update */
+	private Histogram updateAllocation = new Histogram();
+	/** The bytes allocated by each frame */
+	private Histogram frameAllocation = new Histogram();
+
+	/** The number of ships after the last update */
+	private volatile int ships;
+	/** The number of aliens after the last update */
+	private volatile int aliens;
+	/** The number of obstacles after the last update */
+	private volatile int obstacles;
+	/** The number of shots after the last update */
+	private volatile int shots;
+	/** The number of pairs the collision dispatcher considered in the last update */
+	private volatile int pairsConsidered;
+	/** The number of pairs the collision dispatcher skipped in the last update */
+	private volatile int pairsSkipped;
+	/** The number of shots that couldn't be fired because the pool was full, as of the last update */
+	private volatile int droppedShots;
+	/** The pixels of background cleared by each frame */
+	private Histogram backgroundFill = new Histogram();
+
+	/** The time of each phase in the update being timed */
+	private long[] updateTimes = new long[LOGIC + 1];
+	/** The bytes the simulation thread had allocated when the update started */
+	private long updateAllocated;
+	/** The event for the update being timed, or null if the event isn't being recorded */
+	private UpdateEvent updateEvent;
+	/** The time of each phase in the frame being timed */
+	private long[] frameTimes = new long[2];
+	/** The bytes the render thread had allocated when the frame started */
+	private long frameAllocated;
+	/** The event for the frame being timed, or null if the event isn't being recorded */
+	private FrameEvent frameEvent;
+
+	/**
+	 * Create a new, empty, set of metrics
+	 */
+	public FrameMetrics() {
+		for (int i=0;i<phases.length;i++) {
+			phases[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server, so they can
+	 * be read over JMX. Failing to register is reported and otherwise
+	 * ignored, the game runs just the same.
+	 */
+	public void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			System.err.println("Unable to register frame metrics: "+e);
+		}
+	}
+
+	/**
+	 * Get the bytes the current thread has allocated so far
+	 *
+	 * @return The bytes allocated, or 0 if it can't be measured
+	 */
+	private static long allocated() {
+		return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Start timing an update. Called from the simulation thread.
+	 *
+	 * @return The time the first phase starts
+	 */
+	public long startUpdate() {
+		updateAllocated = allocated();
+		if (UPDATE_EVENT.isEnabled()) {
+			updateEvent = new UpdateEvent();
+			updateEvent.begin();
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Start timing a frame. Called from the render thread.
+	 *
+	 * @return The time the first phase starts
+	 */
+	public long startFrame() {
+		frameAllocated = allocated();
+		if (FRAME_EVENT.isEnabled()) {
+			frameEvent = new FrameEvent();
+			frameEvent.begin();
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the end of a phase, which starts the next
+	 *
+	 * @param phase The phase that has ended
+	 * @param start The time the phase started
+	 * @return The time the phase ended, the start of the next phase
+	 */
+	public long lap(int phase,long start) {
+		long now = System.nanoTime();
+		long time = now - start;
+		phases[phase].record(time);
+		if (phase <= LOGIC) {
+			updateTimes[phase] = time;
+		} else {
+			frameTimes[phase - DRAW] = time;
+		}
+		return now;
+	}
+
+	/**
+	 * Finish timing an update, counting the entities it left. Called 
+	 * from the simulation thread.
+	 *
+	 * @param world The entity world of the simulation
+	 * @param projectiles The shots in flight
+	 * @param dispatcher The collision dispatcher of the simulation
+	 */
+	public void endUpdate(EntityWorld world,ProjectileManager projectiles,CollisionDispatcher dispatcher) {
+		long bytes = allocated() - updateAllocated;
+		updateAllocation.record(bytes);
+
+		int ships = 0;
+		int aliens = 0;
+		int obstacles = 0;
+		for (int i=0;i<world.count;i++) {
+			switch (world.type[i]) {
+			case EntityWorld.SHIP:
+				ships++;
+				break;
+			case EntityWorld.ALIEN:
+				aliens++;
+				break;
+			case EntityWorld.OBSTACLE:
+				obstacles++;
+				break;
+			}
+		}
+		this.ships = ships;
+		this.aliens = aliens;
+		this.obstacles = obstacles;
+		this.shots = projectiles.liveCount;
+		pairsConsidered = dispatcher.getPairsConsidered();
+		pairsSkipped = dispatcher.getPairsSkipped();
+		droppedShots = projectiles.getDropped();
+
+		UpdateEvent event = updateEvent;
+		if (event != null) {
+			updateEvent = null;
+			event.end();
+			if (event.shouldCommit()) {
+				event.input = updateTimes[INPUT];
+				event.move = updateTimes[MOVE];
+				event.collision = updateTimes[COLLISION];
+				event.alienFire = updateTimes[ALIEN_FIRE];
+				event.removal = updateTimes[REMOVAL];
+				event.logic = updateTimes[LOGIC];
+				event.aliens = aliens;
+				event.obstacles = obstacles;
+				event.shots = shots;
+				event.allocated = bytes;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Finish timing a frame. Called from the render thread.
+	 *
+	 * @param fill The pixels of background cleared by the frame
+	 */
+	public void endFrame(long fill) {
+		long bytes = allocated() - frameAllocated;
+		frameAllocation.record(bytes);
+		backgroundFill.record(fill);
+
+		FrameEvent event = frameEvent;
+		if (event != null) {
+			frameEvent = null;
+			event.end();
+			if (event.shouldCommit()) {
+				event.draw = frameTimes[DRAW - DRAW];
+				event.present = frameTimes[PRESENT - DRAW];
+				event.allocated = bytes;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Get a statistic of every phase
+	 *
+	 * @param fraction The percentile to get, or -1 for the maximum
+	 * @return The statistic of each phase, keyed by its name
+	 */
+	private Map<String,Long> getPhases(double fraction) {
+		Map<String,Long> values = new LinkedHashMap<String,Long>();
+		for (int i=0;i<phases.length;i++) {
+			values.put(PHASE_NAMES[i],Long.valueOf(fraction < 0 ? phases[i].getMax() : phases[i].getPercentile(fraction)));
+		}
+		return values;
+	}
+
+	/**
+	 * Get a statistic of the allocation of updates and frames
+	 *
+	 * @param fraction The percentile to get, or -1 for the maximum
+	 * @return The statistic for "update" and "frame"
+	 */
+	private Map<String,Long> getAllocation(double fraction) {
+		Map<String,Long> values = new LinkedHashMap<String,Long>();
+		values.put("update",Long.valueOf(fraction < 0 ? updateAllocation.getMax() : updateAllocation.getPercentile(fraction)));
+		values.put("frame",Long.valueOf(fraction < 0 ? frameAllocation.getMax() : frameAllocation.getPercentile(fraction)));
+		return values;
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getPhaseP50()
+	 */
+	public Map<String,Long> getPhaseP50() {
+		return getPhases(0.5);
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getPhaseP99()
+	 */
+	public Map<String,Long> getPhaseP99() {
+		return getPhases(0.99);
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getPhaseMax()
+	 */
+	public Map<String,Long> getPhaseMax() {
+		return getPhases(-1);
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getPhaseCount()
+	 */
+	public Map<String,Long> getPhaseCount() {
+		Map<String,Long> values = new LinkedHashMap<String,Long>();
+		for (int i=0;i<phases.length;i++) {
+			values.put(PHASE_NAMES[i],Long.valueOf(phases[i].getCount()));
+		}
+		return values;
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getAllocationP50()
+	 */
+	public Map<String,Long> getAllocationP50() {
+		return getAllocation(0.5);
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getAllocationP99()
+	 */
+	public Map<String,Long> getAllocationP99() {
+		return getAllocation(0.99);
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getAllocationMax()
+	 */
+	public Map<String,Long> getAllocationMax() {
+		return getAllocation(-1);
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getEntityCounts()
+	 */
+	public Map<String,Integer> getEntityCounts() {
+		Map<String,Integer> values = new LinkedHashMap<String,Integer>();
+		values.put("ship",Integer.valueOf(ships));
+		values.put("alien",Integer.valueOf(aliens));
+		values.put("obstacle",Integer.valueOf(obstacles));
+		values.put("shot",Integer.valueOf(shots));
+		return values;
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getCollisionPairs()
+	 */
+	public Map<String,Integer> getCollisionPairs() {
+		Map<String,Integer> values = new LinkedHashMap<String,Integer>();
+		values.put("considered",Integer.valueOf(pairsConsidered));
+		values.put("skipped",Integer.valueOf(pairsSkipped));
+		return values;
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getDroppedShots()
+	 */
+	public int getDroppedShots() {
+		return droppedShots;
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getBackgroundFill()
+	 */
+	public Map<String,Long> getBackgroundFill() {
+		Map<String,Long> values = new LinkedHashMap<String,Long>();
+		values.put("p50",Long.valueOf(backgroundFill.getPercentile(0.5)));
+		values.put("p99",Long.valueOf(backgroundFill.getPercentile(0.99)));
+		values.put("max",Long.valueOf(backgroundFill.getMax()));
+		return values;
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#getPacerJitter()
+	 */
+	public long getPacerJitter() {
+		return (long) SystemTimer.getPacer().getJitter();
+	}
+
+	/**
+	 * @see com.spaceinvaders.FrameMetricsMXBean#reset()
+	 */
+	public void reset() {
+		for (int i=0;i<phases.length;i++) {
+			phases[i].reset();
+		}
+		updateAllocation.reset();
+		frameAllocation.reset();
+		backgroundFill.reset();
+		SystemTimer.getPacer().resetStatistics();
+	}
+
+	/**
+	 * Get a summary of the phases timed, one line per phase with its 
+	 * median, 99th percentile and longest time
+	 *
+	 * @return The summary
+	 */
+	public String getReport() {
+		StringBuilder report = new StringBuilder();
+		for (int i=0;i<phases.length;i++) {
+			if (phases[i].getCount() == 0) {
+				continue;
+			}
+			report.append("  ").append(PHASE_NAMES[i])
+				.append(": p50 ").append(String.format("%.2f",phases[i].getPercentile(0.5) / 1000.0))
+				.append("us, p99 ").append(String.format("%.2f",phases[i].getPercentile(0.99) / 1000.0))
+				.append("us, max ").append(String.format("%.2f",phases[i].getMax() / 1000.0)).append("us\n");
+		}
+		report.append("  Allocation: update p50 ").append(updateAllocation.getPercentile(0.5))
+			.append("B max ").append(updateAllocation.getMax())
+			.append("B, frame p50 ").append(frameAllocation.getPercentile(0.5))
+			.append("B max ").append(frameAllocation.getMax()).append("B\n");
+		report.append("  Shots dropped: ").append(droppedShots);
+		return report.toString();
+	}
+
+	/**
+	 * The flight recorder event written for each update
+	 */
+	@Name("com.spaceinvaders.Update")
+	@Label("Game Update")
+	@Category("Space Invaders")
+	@Description("One step of the simulation, with the time of each phase")
+	@StackTrace(false)
+	public static class UpdateEvent extends Event {
+		@Label("Input")
+		@Timespan(Timespan.NANOSECONDS)
+		long input;
+		@Label("Move")
+		@Timespan(Timespan.NANOSECONDS)
+		long move;
+		@Label("Collision")
+		@Timespan(Timespan.NANOSECONDS)
+		long collision;
+		@Label("Alien Fire")
+		@Timespan(Timespan.NANOSECONDS)
+		long alienFire;
+		@Label("Removal")
+		@Timespan(Timespan.NANOSECONDS)
+		long removal;
+		@Label("Logic")
+		@Timespan(Timespan.NANOSECONDS)
+		long logic;
+		@Label("Aliens")
+		int aliens;
+		@Label("Obstacles")
+		int obstacles;
+		@Label("Shots")
+		int shots;
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+
+	/**
+	 * The flight recorder event written for each frame drawn
+	 */
+	@Name("com.spaceinvaders.Frame")
+	@Label("Game Frame")
+	@Category("Space Invaders")
+	@Description("One frame drawn, with the time of each phase")
+	@StackTrace(false)
+	public static class FrameEvent extends Event {
+		@Label("Draw")
+		@Timespan(Timespan.NANOSECONDS)
+		long draw;
+		@Label("Present")
+		@Timespan(Timespan.NANOSECONDS)
+		long present;
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+}
@@ -0,0 +1,109 @@
+package com.spaceinvaders;
+
+import java.util.Map;
+
+/**
+ * The management interface of the frame timing metrics (@see 
+ * FrameMetrics), so they can be watched from JConsole or any other JMX
+ * client while the game runs.
+ * <p>
+ * Phase times are in nanoseconds, keyed by the name of the phase. 
+ * Allocation is in bytes, keyed by "update" (one step of the simulation)
+ * and "frame" (one frame drawn). Background fill is in pixels cleared
+ * each frame.
+ *
+ */
+public interface FrameMetricsMXBean {
+	/**
+	 * Get the median time of each phase
+	 *
+	 * @return The median time of each phase (ns)
+	 */
+	public Map<String,Long> getPhaseP50();
+
+	/**
+	 * Get the 99th percentile time of each phase
+	 *
+	 * @return The 99th percentile time of each phase (ns)
+	 */
+	public Map<String,Long> getPhaseP99();
+
+	/**
+	 * Get the longest time of each phase
+	 *
+	 * @return The longest time of each phase (ns)
+	 */
+	public Map<String,Long> getPhaseMax();
+
+	/**
+	 * Get the number of times each phase has been timed
+	 *
+	 * @return The number of times each phase has been timed
+	 */
+	public Map<String,Long> getPhaseCount();
+
+	/**
+	 * Get the median allocation of each update and frame
+	 *
+	 * @return The median bytes allocated
+	 */
+	public Map<String,Long> getAllocationP50();
+
+	/**
+	 * Get the 99th percentile allocation of each update and frame
+	 *
+	 * @return The 99th percentile bytes allocated
+	 */
+	public Map<String,Long> getAllocationP99();
+
+	/**
+	 * Get the largest allocation of any update and frame
+	 *
+	 * @return The most bytes allocated
+	 */
+	public Map<String,Long> getAllocationMax();
+
+	/**
+	 * Get the number of entities of each type after the last update
+	 *
+	 * @return The number of ships, aliens, obstacles and shots
+	 */
+	public Map<String,Integer> getEntityCounts();
+
+	/**
+	 * Get the number of pairs the collision dispatcher considered in the
+	 * last update, and how many of those it skipped without testing
+	 *
+	 * @return The pairs "considered" and "skipped"
+	 */
+	public Map<String,Integer> getCollisionPairs();
+
+	/**
+	 * Get the number of shots that couldn't be fired because the pool 
+	 * of shots was full, since the simulation was created
+	 *
+	 * @return The number of shots dropped
+	 */
+	public int getDroppedShots();
+
+	/**
+	 * Get the pixels of background cleared each frame
+	 *
+	 * @return The "p50", "p99" and "max" pixels cleared
+	 */
+	public Map<String,Long> getBackgroundFill();
+
+	/**
+	 * Get the jitter of the frame pacer's waits, the standard deviation
+	 * of how far they overshot
+	 *
+	 * @return The jitter (ns)
+	 */
+	public long getPacerJitter();
+
+	/**
+	 * Forget every time, allocation and fill recorded so far, and the 
+	 * frame pacer's statistics
+	 */
+	public void reset();
+}
@@ -1,127 +1,115 @@
 package com.spaceinvaders;
 
+import java.awt.BorderLayout;
 import java.awt.Canvas;
-import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferStrategy;
 import java.io.IOException;
-import java.net.URL;
-import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
 import java.util.Random;
 
-import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
+import com.spaceinvader.timer.VirtualClock;
+
 /**
- * The main hook of our game. This class with both act as a manager
- * for the display and central mediator for the game logic. 
- * 
- * Display management will consist of a loop that cycles round all
- * entities in the game asking them to move and then drawing them
- * in the appropriate place. With the help of an inner class it
- * will also allow the player to control the main ship.
+ * The main hook of our game. This class acts as the window onto the
+ * game, drawing the simulation (@see Simulation) and passing it the 
+ * player's key presses. The rules of the game live in the simulation,
+ * so it can just as well run without a window.
  * 
- * As a mediator it will be informed when entities within our game
- * detect events (e.g. alient killed, player died) and will take
- * appropriate game actions.
+ * Display management will consist of a loop that moves the simulation
+ * on and then draws every entity in the appropriate place. With the 
+ * help of an inner class it will also allow the player to control the
+ * main ship.
  * 
  */
 public class Game extends Canvas {
 	private static final long serialVersionUID = 1L;
 	/** The stragey that allows us to use accelerate page flipping */
 	private BufferStrategy strategy;
+	/** The rendering set up chosen for this machine */
+	private RenderBackend backend;
+	/** The timing of each phase of the updates and frames, readable over JMX */
+	private FrameMetrics metrics = new FrameMetrics();
 	/** True if the game is currently "running", i.e. the game loop is looping */
-	private boolean gameRunning = true;
-	/** The list of all the entities that exist in our game */
-	private ArrayList<Entity> entities = new ArrayList<Entity>();
-	/** The list of entities that need to be removed from the game this loop */
-	private ArrayList<Entity> removeList = new ArrayList<Entity>();
-	/** The entity representing the player */
-	private Entity ship;
-	/** The speed at which the player's ship should move (pixels/sec) */
-	private double moveSpeed = 300;
-	/** The time at which last fired a shot */
-	private long lastFire = 0;
-	/** The interval between our players shot (ms) */
-	private long firingInterval = 500;
-	/** The number of aliens left on the screen */
-	private int alienCount;
-	/** the total score of the user */
-	private int totalScoreOfUser;
-	/** current level of difficulty */
-	private int currentLevel = 1;
-	/** The last time when an alien troop shot a bullet */
-	private long lastAlienBulletFire = 0;
-	/** The interval in which an alien troop should shoot a bullet */
-	private long alienFiringInterval = 2000;
-	/** The randomizer used to pick random number of aliens and random aliens to shoot the ship */
-	private Random randomizer = new Random();
-
-	/** The message to display which waiting for a key press */
-	private String message = "";
-	/** True if we're holding up game play until a key has been pressed */
-	private boolean waitingForKeyPress = true;
-	/** True if the left cursor key is currently pressed */
-	private boolean leftPressed = false;
-	/** True if the right cursor key is currently pressed */
-	private boolean rightPressed = false;
-	/** True if we are firing */
-	private boolean firePressed = false;
-	/** True if game logic needs to be applied this loop, normally as a result of a game event */
-	private boolean logicRequiredThisLoop = false;
-	/** The last time at which we recorded the frame rate */
-	private long lastFpsTime;
-	/** The current number of frames recorded */
-	private int fps;
-	/** The normal title of the game window */
-	private String windowTitle = "Space Invaders";
-	/** The game window that we'll update with the frame count */
+	private volatile boolean gameRunning = true;
+	/** The rules and state of the game being displayed */
+	private Simulation simulation;
+	/** The clock the simulation is timed by, moved on by each update */
+	private VirtualClock gameClock = new VirtualClock();
+	/** The recorder the game is being recorded by, or null if it isn't */
+	private ReplayRecorder recorder;
+	/** The thread the simulation is run on */
+	private Thread simulationThread;
+	/** The history of the game for rewinding, or null if rewinding is off */
+	private RewindBuffer rewind;
+	/** True if the game is being stepped backwards */
+	private volatile boolean rewindPressed = false;
+	/** The handoff of snapshots from the simulation thread to the render thread */
+	private SnapshotExchange snapshots = new SnapshotExchange();
+	/** The system that draws the entities */
+	private RenderSystem renderSystem = new RenderSystem();
+	/** The renderer that draws the level, score and messages */
+	private HudRenderer hudRenderer = new HudRenderer();
+	/** The length of each fixed game update (ns), giving 125 updates a second */
+	private long updateInterval = 8000000;
+	/** The most updates the simulation can fall behind before giving up the time owed */
+	private int maxUpdatesBehind = 5;
+	/** The game window */
 	private JFrame container;
 	/** Variable to get the current screen size*/
 	private Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 	/** Contains the background image*/
 	private Image bgImage;
+	/** The background scaled to the screen and kept in video memory */
+	private BackgroundLayer background;
+	/** The areas of the screen drawn over in recent frames */
+	private DirtyRegions dirty;
+	/** True if only the areas drawn over are cleared each frame, rather than the whole screen */
+	private boolean dirtyRendering = "dirty".equals(System.getProperty("spaceinvaders.render"));
+	/** The number of frames left that must clear the whole screen */
+	private int fullRedraws = 2;
+	/** The mapping of the playfield the game is played in onto the canvas */
+	private Playfield playfield;
+	/** True if the canvas has changed size since the playfield was fitted to it */
+	private volatile boolean resized = false;
+	/** True once the first frame has been shown */
+	private boolean firstFrameShown = false;
 	/** Background image path*/
 	private String bgImagePath = "gameresources/background.jpg";
+
 	/**
 	 * Construct our game and set it running.
+	 *
+	 * @param preloader The preloader decoding the game's assets
 	 */
-	public Game() {
+	public Game(AssetPreloader preloader) {
 		// create a frame to contain our game
 		container = new JFrame("Space Invaders");
 
 		// removes the title bar and task bar if possible (depends on os )
 		container.setUndecorated(true);
 
-		//Setting Background Image
-		URL url = this.getClass().getClassLoader().getResource(bgImagePath);
-		if (url == null) {
-			Util.fail("Can't find ref: "+bgImagePath);
-		}
-		try{
-			// use ImageIO to read the image in
-			bgImage = ImageIO.read(url);
-		} catch (IOException e) {
-			Util.fail("Failed to load: "+bgImagePath);
-		}
 
 		// get hold the content of the frame and set up the resolution of the game
 		JPanel panel = (JPanel) container.getContentPane();
 		panel.setPreferredSize(new Dimension(screenSize.width, screenSize.height));
-		panel.setLayout(null);
+		panel.setLayout(new BorderLayout());
 
-		// setup our canvas size and put it into the content of the frame
-		setBounds(0,0,screenSize.width, screenSize.height);
-		panel.add(this);
+		// put our canvas into the content of the frame, filling it 
+		// whatever size it's made
+		panel.add(this,BorderLayout.CENTER);
 
 		// Tell AWT not to bother repainting our canvas since we're
 		// going to do that our self in accelerated mode
@@ -144,287 +132,244 @@ public class Game extends Canvas {
 		// so we can respond to key pressed
 		addKeyListener(new KeyInputHandler());
 
-		// request the focus so key events come to us
-		requestFocus();
-
-		// create the buffering strategy which will allow AWT
-		// to manage our accelerated graphics
-		createBufferStrategy(2);
-		strategy = getBufferStrategy();
-
-		// initialise the entities in our game so there's something
-		// to see at startup
-		initEntities();
-	}
-
-	/**
-	 * Start a fresh game, this should clear out any old data and
-	 * create a new set.
-	 */
-	private void startGame() {
-		// clear out any existing entities and intialise a new set
-		entities.clear();
-		initEntities();
-
-		// blank out any keyboard settings we might currently have
-		leftPressed = false;
-		rightPressed = false;
-		firePressed = false;
-	}
-
-	/**
-	 * Initialise the starting state of the entities (ship and aliens). Each
-	 * entitiy will be added to the overall list of entities in the game.
-	 */
-	private void initEntities() {
-		// create the player ship and place it roughly in the center of the screen
-		ship = new ShipEntity(this,"gameresources/ship.gif",(screenSize.width/100*50),650);
-		entities.add(ship);
-
-		// create a block of aliens (5 rows, by 12 aliens, spaced evenly)
-		alienCount = 0;
-		for (int row=0;row<4;row++) {
-			for (int x=0;x<12;x++) {
-				Entity alien = new AlienEntity(this,(screenSize.width/100*30)+(x*50),(50)+row*30);
-				entities.add(alien);
-				alienCount++;
+		// the playfield is fitted to the canvas again whenever it 
+		// changes size, picked up by the next frame drawn
+		addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent e) {
+				resized = true;
 			}
-		}
-		for (int x=0;x<12;x++) {
-			Entity obstacle = new ObstacleEntity(this,(screenSize.width/100*30)+(x*50),(50)+4*30);
-			entities.add(obstacle);
-		}
-
-	}
+		});
 
-	/**
-	 * Notification from a game entity that the logic of the game
-	 * should be run at the next opportunity (normally as a result of some
-	 * game event)
-	 */
-	public void updateLogic() {
-		logicRequiredThisLoop = true;
-	}
+		// request the focus so key events come to us
+		requestFocus();
 
-	/**
-	 * Remove an entity from the game. The entity removed will
-	 * no longer move or be drawn.
-	 * 
-	 * @param entity The entity that should be removed
-	 */
-	public void removeEntity(Entity entity) {
-		removeList.add(entity);
-	}
+		// create the best buffering strategy the screen supports, 
+		// which will allow AWT to manage our accelerated graphics
+		backend = new RenderBackend(this,dirtyRendering);
+		strategy = backend.getStrategy();
+		SpriteStore.get().setVideoMemory(backend.isVideoMemorySprites());
 
-	/**
-	 * Notification that the player has died. 
-	 */
-	public void notifyDeath() {
-		message = "Oh no! They got you!!.Try again?";
-		totalScoreOfUser = 0;
-		currentLevel = 1;
-		waitingForKeyPress = true;
-	}
+		// fit the playfield to the canvas, so the sprites are made at
+		// the right size as they're loaded
+		playfield = new Playfield(getWidth(),getHeight());
+		SpriteStore.get().setScale(playfield.getScale());
+		renderSystem.setPlayfield(playfield);
+		hudRenderer.setPlayfield(playfield);
 
-	/**
-	 * Notification that the player has won since all the aliens
-	 * are dead.
-	 */
-	public void notifyWin() {
-		message = "Well done! You finished level " + currentLevel + ".Your total score is " + totalScoreOfUser + ".";
-		currentLevel++;
-		waitingForKeyPress = true;
-	}
+		// the assets have been decoding while the window was set up,
+		// wait for the last of them and make the sprites ready
+		preloader.finish();
+		System.out.println(preloader.getReport());
 
-	/**
-	 * Notification that an alien has been killed
-	 */
-	public void notifyAlienKilled() {
-		// reduce the alient count, if there are none left, the player has won!
-		alienCount--;
-		// increase the score as the user killed an alien
-		totalScoreOfUser += 10;
-
-		if (alienCount == 0) {
-			notifyWin();
+		//Setting Background Image
+		bgImage = ImageCache.get().getImage(bgImagePath);
+		background = new BackgroundLayer(bgImage,playfield.getSurfaceWidth(),playfield.getSurfaceHeight());
+		dirty = new DirtyRegions(playfield.getSurfaceWidth(),playfield.getSurfaceHeight());
+
+		// the game itself plays out in the simulation, on a playfield
+		// the same size whatever the screen. The simulation keeps its 
+		// own time, moved on by exactly one step each update, so the 
+		// only thing that decides how it plays out is the seed and the
+		// player's input
+		long seed = new Random().nextLong();
+		int settings = Simulation.getSettingsFromProperties();
+		simulation = new Simulation(Playfield.WIDTH,Playfield.HEIGHT,seed,gameClock,settings);
+
+		// time every phase of the updates and frames, so spikes can be
+		// traced over JMX or in a flight recording (@see FrameMetrics)
+		simulation.setMetrics(metrics);
+		metrics.register();
+
+		// the simulation has registered every sprite the game uses, so 
+		// pack them into a single atlas to draw from. The atlas can be
+		// turned off with -Dspaceinvaders.atlas=false to compare
+		if (!"false".equals(System.getProperty("spaceinvaders.atlas"))) {
+			SpriteStore.get().buildAtlas();
 		}
 
-		// if there are still some aliens left then they all need to get faster, so
-		// speed up all the existing aliens
-		for (int i=0;i<entities.size();i++) {
-			Entity entity = (Entity) entities.get(i);
-
-			if (entity instanceof AlienEntity) {
-				// speed up by 2%
-				entity.setHorizontalMovement(entity.getHorizontalMovement() * (1+ 0.01*currentLevel));
+		// measure how quickly sprites can be drawn, and report how the
+		// game is being drawn on this machine
+		backend.measureBlitRate(SpriteStore.get().getSprite("gameresources/alien.gif"));
+		System.out.println(backend.getReport());
+
+		// -Dspaceinvaders.record=<file> records the game so it can be
+		// replayed exactly (@see ReplayPlayer)
+		String recordFile = System.getProperty("spaceinvaders.record");
+		if (recordFile != null) {
+			try {
+				recorder = new ReplayRecorder(recordFile,seed,Playfield.WIDTH,Playfield.HEIGHT,updateInterval / 1000000,settings);
+				simulation.setListener(recorder);
+			} catch (IOException e) {
+				System.err.println("Unable to record to "+recordFile+": "+e);
 			}
 		}
-	}
 
-	/**
-	 * Attempt to fire a shot from the player. Its called "try"
-	 * since we must first check that the player can fire at this 
-	 * point, i.e. has he/she waited long enough between shots
-	 */
-	public void tryToFire() {
-		// check that we have waiting long enough to fire
-		if (System.currentTimeMillis() - lastFire < firingInterval) {
-			return;
+		// holding backspace steps the game backwards over the last 30
+		// seconds, in at most 4MB. Rewinding changes what happened, so 
+		// it's not available while the game is being recorded
+		if (recorder == null) {
+			int updatesPerSecond = (int) (1000000000L / updateInterval);
+			rewind = new RewindBuffer(30 * updatesPerSecond,4 << 20,updatesPerSecond);
 		}
-
-		// if we waited long enough, create the shot entity, and record the time.
-		lastFire = System.currentTimeMillis();
-		ShotEntity shot = new ShotEntity(this,"gameresources/shot.gif",ship.getX()+10,ship.getY()-30);
-		entities.add(shot);
 	}
 
 	/**
-	 * The main game loop. This loop is running during all game
-	 * play as is responsible for the following activities:
+	 * The main game loop. The game runs on two threads:
 	 * <p>
-	 * - Working out the speed of the game loop to update moves
-	 * - Moving the game entities
-	 * - Drawing the screen contents (entities, text)
-	 * - Updating game events
-	 * - Checking Input
+	 * - The simulation thread moves the game on in fixed steps, 
+	 *   publishing a snapshot of what to draw after each one
+	 * - This thread draws the newest snapshot, part way towards the next
+	 *   step based on how much time has passed since it was due
 	 * <p>
+	 * Neither thread waits on the other, so a slow frame doesn't hold
+	 * up the game and a slow update doesn't hold up drawing.
 	 */
 	public void gameLoop() {
-		long lastLoopTime = SystemTimer.getTime();
-
-		// keep looping round til the game ends
-		while (gameRunning) {
-			// work out how long its been since the last update, this
-			// will be used to calculate how far the entities should
-			// move this loop
-			long delta = SystemTimer.getTime() - lastLoopTime;
-			lastLoopTime = SystemTimer.getTime();
-
-			// update the frame counter
-			lastFpsTime += delta;
-			fps++;
-
-			// update our FPS counter if a second has passed since
-			// we last recorded
-			if (lastFpsTime >= 1000) {
-				container.setTitle(windowTitle+" (FPS: "+fps+")");
-				lastFpsTime = 0;
-				fps = 0;
-			}
-
-			// Get hold of a graphics context for the accelerated 
-			// surface and blank it out
-			Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
-			//			g.setColor(Color.blue);
-			if(bgImage==null){
-				System.out.println("bg image is null");
+		simulationThread = new Thread(new Runnable() {
+			public void run() {
+				simulationLoop();
 			}
-			g.drawImage(bgImage, 0,0,this);
-			g.fillRect(0,0,screenSize.width, screenSize.height);
-
-			// Display the level and score information
-			g.setColor(Color.white);
-			g.setFont(new Font("Serif", Font.BOLD, 15));
-			g.drawString("Current Level: " + currentLevel,(1350-2*g.getFontMetrics().stringWidth("Current Level: " + currentLevel)),30);
-			g.drawString("Total Score: " + totalScoreOfUser,(1350-2*g.getFontMetrics().stringWidth("Current Level: " + currentLevel)),50);
+		},"Simulation");
+		simulationThread.setDaemon(true);
+		simulationThread.start();
+
+		// the game is ended by System.exit(), so the recording is 
+		// finished off once the simulation thread has stopped
+		if (recorder != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					finishRecording();
+				}
+			});
+		}
 
-			// cycle round asking each entity to move itself
-			if (!waitingForKeyPress) {
-				for (int i=0;i<entities.size();i++) {
-					Entity entity = (Entity) entities.get(i);
+		long lastLoopTime = SystemTimer.getNanoTime();
 
-					entity.move(delta);
-				}
-			}
+		// keep looping round til the game ends
+		while (gameRunning) {
+			long now = SystemTimer.getNanoTime();
+			lastLoopTime = now;
 
-			// cycle round drawing all the entities we have in the game
-			for (int i=0;i<entities.size();i++) {
-				Entity entity = (Entity) entities.get(i);
+			// draw the newest update, the fraction of the way into the 
+			// next step that the time since it was due allows
+			RenderSnapshot snapshot = snapshots.getLatest();
+			double alpha = (double) (now - snapshot.getTime()) / updateInterval;
+			render(snapshot,Math.max(0,Math.min(1,alpha)));
 
-				entity.draw(g);
-			}
+			// we want each frame to take 10 milliseconds, to do this
+			// we've recorded when we started the frame. We add 10 milliseconds
+			// to this and then factor in the current time to give 
+			// us our final value to wait for
+			SystemTimer.sleepNanos(lastLoopTime+10000000-SystemTimer.getNanoTime());
+		}
+	}
 
-			// brute force collisions, compare every entity against
-			// every other entity. If any of them collide notify 
-			// both entities that the collision has occured
-			for (int p=0;p<entities.size();p++) {
-				for (int s=p+1;s<entities.size();s++) {
-					Entity me = (Entity) entities.get(p);
-					Entity him = (Entity) entities.get(s);
-					if (me.collidesWith(him)) {
-						me.collidedWith(him);
-						him.collidedWith(me);
-					}
-				}
-			}
+	/**
+	 * The loop run by the simulation thread, moving the game on in fixed
+	 * steps and publishing a snapshot of each for drawing. If we fall too
+	 * far behind (a long stall) the time owed is given up rather than
+	 * running a burst of updates to catch up.
+	 */
+	private void simulationLoop() {
+		long nextUpdate = SystemTimer.getNanoTime();
 
-			// make random aliens fire missiles at the ship
-			if(System.currentTimeMillis() - lastAlienBulletFire > alienFiringInterval){
-				for(int i=0; i< randomizer.nextInt(currentLevel*2 + 1); i++){
-					int index = randomizer.nextInt(entities.size());
-					Entity me = (Entity) entities.get(index);
-					if(me instanceof AlienEntity){
-						ShotEntity shot = new ShotEntity(this,"gameresources/shot.gif",me.getX()+10,me.getY()+30);
-						shot.setVerticalMovement(-shot.getVerticalMovement());
-						entities.add(shot);
-					}
+		while (gameRunning) {
+			if (rewindPressed && (rewind != null)) {
+				rewind.stepBack(simulation);
+			} else {
+				simulation.update(updateInterval / 1000000);
+				if (rewind != null) {
+					rewind.record(simulation);
 				}
-				lastAlienBulletFire = System.currentTimeMillis();
 			}
-			
-
+			gameClock.advance(updateInterval);
 
-			// remove any entity that has been marked for clear up
-			entities.removeAll(removeList);
-			removeList.clear();
+			RenderSnapshot snapshot = snapshots.getBack();
+			snapshot.capture(simulation,nextUpdate);
+			snapshots.publish();
 
-			// if a game event has indicated that game logic should
-			// be resolved, cycle round every entity requesting that
-			// their personal logic should be considered.
-			if (logicRequiredThisLoop) {
-				for (int i=0;i<entities.size();i++) {
-					Entity entity = (Entity) entities.get(i);
-					entity.doLogic();
-				}
-
-				logicRequiredThisLoop = false;
+			nextUpdate += updateInterval;
+			long now = SystemTimer.getNanoTime();
+			if (now - nextUpdate > maxUpdatesBehind * updateInterval) {
+				nextUpdate = now;
 			}
+			SystemTimer.sleepNanos(nextUpdate - now);
+		}
+	}
 
-			// if we're waiting for an "any key" press then draw the 
-			// current message 
-			if (waitingForKeyPress) {
-				g.setColor(Color.white);
-				g.drawString(message,(1350-g.getFontMetrics().stringWidth(message))/2,300);
-				g.drawString("Press any key",(1350-g.getFontMetrics().stringWidth("Press any key"))/2,350);
-			}
+	/**
+	 * Draw a snapshot of the game
+	 * 
+	 * @param snapshot The snapshot to draw
+	 * @param alpha How far between the last two updates to draw the 
+	 * entities, from 0 (the previous update) to 1 (the latest)
+	 */
+	private void render(RenderSnapshot snapshot,double alpha) {
+		long phaseStart = metrics.startFrame();
+
+		// Get hold of a graphics context for the accelerated 
+		// surface and clear it back to the background. In dirty 
+		// rendering only the areas drawn over in the frames that could
+		// still be in the back buffer need clearing
+		if (resized) {
+			resized = false;
+			fitPlayfield();
+		}
+		Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+		dirty.nextFrame();
+		long fill;
+		if (dirtyRendering && (fullRedraws == 0)) {
+			fill = dirty.clear(g,background);
+		} else {
+			background.draw(g);
+			fill = (long) playfield.getSurfaceWidth() * playfield.getSurfaceHeight();
+			fullRedraws = Math.max(0,fullRedraws-1);
+		}
 
-			// finally, we've completed drawing so clear up the graphics
-			// and flip the buffer over
-			g.dispose();
-			strategy.show();
+		// draw all the entities we have in the game, then the shots,
+		// then the level, score and any message over the top
+		renderSystem.draw(snapshot,g,alpha,dirty);
+		hudRenderer.draw(g,snapshot,dirty);
+
+		// finally, we've completed drawing so clear up the graphics
+		// and flip the buffer over. If the buffers were lost on the 
+		// way nothing in them can be trusted, so clear the whole 
+		// screen until both have been drawn afresh
+		g.dispose();
+		phaseStart = metrics.lap(FrameMetrics.DRAW,phaseStart);
+		strategy.show();
+		SpriteAtlas atlas = SpriteStore.get().getAtlas();
+		if (strategy.contentsLost() || strategy.contentsRestored() || ((atlas != null) && atlas.contentsLost())) {
+			fullRedraws = 2;
+		}
+		metrics.lap(FrameMetrics.PRESENT,phaseStart);
+		metrics.endFrame(fill);
 
-			// resolve the movement of the ship. First assume the ship 
-			// isn't moving. If either cursor key is pressed then
-			// update the movement appropraitely
-			ship.setHorizontalMovement(0);
+		if (!firstFrameShown) {
+			firstFrameShown = true;
+			System.out.println("First frame shown "+ManagementFactory.getRuntimeMXBean().getUptime()+"ms after launch");
+		}
+	}
 
-			if ((leftPressed) && (!rightPressed)) {
-				ship.setHorizontalMovement(-moveSpeed);
-			} else if ((rightPressed) && (!leftPressed)) {
-				ship.setHorizontalMovement(moveSpeed);
-			}
+	/**
+	 * Fit the playfield to the canvas again after it has changed size,
+	 * scaling the sprites, HUD and background to match. Everything is
+	 * scaled here once rather than as it's drawn.
+	 */
+	private void fitPlayfield() {
+		if ((getWidth() <= 0) || (getHeight() <= 0) || playfield.fits(getWidth(),getHeight())) {
+			return;
+		}
 
-			// if we're pressing fire, attempt to fire
-			if (firePressed) {
-				tryToFire();
-			}
+		playfield = new Playfield(getWidth(),getHeight());
+		SpriteStore.get().setScale(playfield.getScale());
+		renderSystem.setPlayfield(playfield);
+		hudRenderer.setPlayfield(playfield);
 
-			// we want each frame to take 10 milliseconds, to do this
-			// we've recorded when we started the frame. We add 10 milliseconds
-			// to this and then factor in the current time to give 
-			// us our final value to wait for
-			SystemTimer.sleep(lastLoopTime+10-SystemTimer.getTime());
-		}
+		background.flush();
+		background = new BackgroundLayer(bgImage,playfield.getSurfaceWidth(),playfield.getSurfaceHeight());
+		dirty = new DirtyRegions(playfield.getSurfaceWidth(),playfield.getSurfaceHeight());
+		fullRedraws = 2;
 	}
 
 	/**
@@ -451,20 +396,26 @@ public class Game extends Canvas {
 		 * @param e The details of the key that was pressed 
 		 */
 		public void keyPressed(KeyEvent e) {
+			// rewinding works even once the game has ended, so the 
+			// player can go back to before it did
+			if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+				rewindPressed = true;
+			}
+
 			// if we're waiting for an "any key" typed then we don't 
 			// want to do anything with just a "press"
-			if (waitingForKeyPress) {
+			if (simulation.isWaitingForKeyPress()) {
 				return;
 			}
 
 			if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-				leftPressed = true;
+				simulation.setLeftPressed(true);
 			}
 			if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-				rightPressed = true;
+				simulation.setRightPressed(true);
 			}
 			if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-				firePressed = true;
+				simulation.setFirePressed(true);
 			}
 		} 
 
@@ -474,20 +425,24 @@ public class Game extends Canvas {
 		 * @param e The details of the key that was released 
 		 */
 		public void keyReleased(KeyEvent e) {
+			if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+				rewindPressed = false;
+			}
+
 			// if we're waiting for an "any key" typed then we don't 
 			// want to do anything with just a "released"
-			if (waitingForKeyPress) {
+			if (simulation.isWaitingForKeyPress()) {
 				return;
 			}
 
 			if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-				leftPressed = false;
+				simulation.setLeftPressed(false);
 			}
 			if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-				rightPressed = false;
+				simulation.setRightPressed(false);
 			}
 			if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-				firePressed = false;
+				simulation.setFirePressed(false);
 			}
 		}
 
@@ -503,13 +458,12 @@ public class Game extends Canvas {
 			// have had a keyType() event from the user releasing
 			// the shoot or move keys, hence the use of the "pressCount"
 			// counter.
-			if (waitingForKeyPress) {
+			if (simulation.isWaitingForKeyPress() && (e.getKeyChar() != '\b')) {
 				if (pressCount == 1) {
 					// since we've now recieved our key typed
 					// event we can mark it as such and start 
 					// our new game
-					waitingForKeyPress = false;
-					startGame();
+					simulation.start();
 					pressCount = 0;
 				} else {
 					pressCount++;
@@ -523,6 +477,21 @@ public class Game extends Canvas {
 		}
 	}
 
+	/**
+	 * Stop the simulation and finish off the recording of the game
+	 */
+	private void finishRecording() {
+		gameRunning = false;
+		try {
+			simulationThread.join(1000);
+			recorder.finish(simulation);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.err.println("Unable to finish the recording: "+e);
+		}
+	}
+
 	/**
 	 * The entry point into the game. We'll simply create an
 	 * instance of class which will start the display and game
@@ -531,7 +500,18 @@ public class Game extends Canvas {
 	 * @param argv The arguments that are passed into our game
 	 */
 	public static void main(String argv[]) {
-		Game g = new Game();
+		// -Dspaceinvaders.clock=virtual runs the game on a virtual 
+		// clock, playing out as fast as the machine can manage
+		if ("virtual".equals(System.getProperty("spaceinvaders.clock"))) {
+			SystemTimer.setClock(new VirtualClock());
+		}
+		
+		// decode every asset in the background while the window is
+		// being created
+		AssetPreloader preloader = new AssetPreloader();
+		preloader.start();
+
+		Game g = new Game(preloader);
 
 		// Start the main game loop, note: this method will not
 		// return until the game has finished running. Hence we are
@@ -0,0 +1,292 @@
+package com.spaceinvaders;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * The printable ASCII characters of a font drawn once into a single 
+ * image, so text can be drawn by copying each character out of it 
+ * rather than laying out and rasterizing the text every frame. 
+ * <p>
+ * Numbers are drawn straight from their value a digit at a time and 
+ * text that doesn't change can be laid out once into a Label, so 
+ * drawing the HUD creates no garbage at all.
+ *
+ */
+public class GlyphAtlas {
+	/** The first character in the atlas */
+	private static final char FIRST = 32;
+	/** The last character in the atlas */
+	private static final char LAST = 126;
+	/** The space left around each character for parts drawn outside its advance */
+	private static final int PAD = 2;
+
+	/** The image holding every character */
+	private Image image;
+	/** The x location of each character's cell in the atlas */
+	private int[] cellX = new int[LAST - FIRST + 1];
+	/** The width of each character's cell in the atlas */
+	private int[] cellWidth = new int[LAST - FIRST + 1];
+	/** The distance to move on after each character */
+	private int[] advance = new int[LAST - FIRST + 1];
+	/** The height of a line of text */
+	private int height;
+	/** The distance from the top of a line to the baseline */
+	private int ascent;
+	/** The digits of the number being drawn, least significant first */
+	private int[] digits = new int[11];
+
+	/**
+	 * Create a new atlas, drawing every printable ASCII character
+	 *
+	 * @param font The font to draw the characters in
+	 * @param color The colour to draw the characters in
+	 */
+	public GlyphAtlas(Font font,Color color) {
+		// measure the characters using a scratch image
+		BufferedImage scratch = new BufferedImage(1,1,BufferedImage.TYPE_INT_ARGB);
+		Graphics2D sg = scratch.createGraphics();
+		sg.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		FontMetrics metrics = sg.getFontMetrics(font);
+		ascent = metrics.getAscent();
+		height = metrics.getAscent() + metrics.getDescent();
+
+		int width = 0;
+		for (char c=FIRST;c<=LAST;c++) {
+			int i = c - FIRST;
+			advance[i] = metrics.charWidth(c);
+			cellX[i] = width;
+			cellWidth[i] = advance[i] + (PAD * 2);
+			width += cellWidth[i];
+		}
+		sg.dispose();
+
+		// draw each character in its own cell
+		BufferedImage glyphs = new BufferedImage(width,height,BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = glyphs.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setFont(font);
+		g.setColor(color);
+		char[] single = new char[1];
+		for (char c=FIRST;c<=LAST;c++) {
+			int i = c - FIRST;
+			single[0] = c;
+			g.setClip(cellX[i],0,cellWidth[i],height);
+			g.drawChars(single,0,1,cellX[i] + PAD,ascent);
+		}
+		g.dispose();
+
+		// keep the atlas in an accelerated image where we can
+		if (GraphicsEnvironment.isHeadless()) {
+			image = glyphs;
+		} else {
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+			image = gc.createCompatibleImage(width,height,Transparency.TRANSLUCENT);
+			Graphics ig = image.getGraphics();
+			ig.drawImage(glyphs,0,0,null);
+			ig.dispose();
+		}
+	}
+
+	/**
+	 * Get the index of a character in the atlas
+	 *
+	 * @param c The character to look up
+	 * @return The index of the character, characters outside the atlas
+	 * are drawn as a question mark
+	 */
+	private int indexOf(char c) {
+		if ((c < FIRST) || (c > LAST)) {
+			c = '?';
+		}
+		return c - FIRST;
+	}
+
+	/**
+	 * Draw a single character
+	 *
+	 * @param g The graphics context to draw on
+	 * @param index The index of the character in the atlas
+	 * @param x The x location of the character
+	 * @param y The y location of the baseline
+	 * @return The distance to the next character
+	 */
+	private int drawGlyph(Graphics g,int index,int x,int y) {
+		int sx = cellX[index];
+		int w = cellWidth[index];
+		int dx = x - PAD;
+		int dy = y - ascent;
+		g.drawImage(image,dx,dy,dx+w,dy+height,sx,0,sx+w,height,null);
+		return advance[index];
+	}
+
+	/**
+	 * Draw a string
+	 *
+	 * @param g The graphics context to draw on
+	 * @param text The text to draw
+	 * @param x The x location of the start of the text
+	 * @param y The y location of the baseline
+	 * @return The width of the text drawn
+	 */
+	public int drawString(Graphics g,String text,int x,int y) {
+		int start = x;
+		for (int i=0;i<text.length();i++) {
+			x += drawGlyph(g,indexOf(text.charAt(i)),x,y);
+		}
+		return x - start;
+	}
+
+	/**
+	 * Draw a number, without building a string of it
+	 *
+	 * @param g The graphics context to draw on
+	 * @param value The number to draw
+	 * @param x The x location of the start of the number
+	 * @param y The y location of the baseline
+	 * @return The width of the number drawn
+	 */
+	public int drawNumber(Graphics g,int value,int x,int y) {
+		int start = x;
+		if (value < 0) {
+			x += drawGlyph(g,'-' - FIRST,x,y);
+		}
+		int count = splitDigits(value);
+		for (int i=count-1;i>=0;i--) {
+			x += drawGlyph(g,'0' + digits[i] - FIRST,x,y);
+		}
+		return x - start;
+	}
+
+	/**
+	 * Draw a label laid out earlier
+	 *
+	 * @param g The graphics context to draw on
+	 * @param label The label to draw
+	 * @param x The x location of the start of the label
+	 * @param y The y location of the baseline
+	 * @return The width of the label
+	 */
+	public int drawLabel(Graphics g,Label label,int x,int y) {
+		for (int i=0;i<label.glyphs.length;i++) {
+			drawGlyph(g,label.glyphs[i],x + label.offsets[i],y);
+		}
+		return label.width;
+	}
+
+	/**
+	 * Get the width of a string
+	 *
+	 * @param text The text to measure
+	 * @return The width of the text
+	 */
+	public int getWidth(String text) {
+		int width = 0;
+		for (int i=0;i<text.length();i++) {
+			width += advance[indexOf(text.charAt(i))];
+		}
+		return width;
+	}
+
+	/**
+	 * Get the width of a number
+	 *
+	 * @param value The number to measure
+	 * @return The width of the number
+	 */
+	public int getWidth(int value) {
+		int width = value < 0 ? advance['-' - FIRST] : 0;
+		int count = splitDigits(value);
+		for (int i=0;i<count;i++) {
+			width += advance['0' + digits[i] - FIRST];
+		}
+		return width;
+	}
+
+	/**
+	 * Split a number into its digits, least significant first
+	 *
+	 * @param value The number to split
+	 * @return The number of digits
+	 */
+	private int splitDigits(int value) {
+		int count = 0;
+		do {
+			// work with the negative value so the smallest int works
+			int digit = value % 10;
+			digits[count++] = digit < 0 ? -digit : digit;
+			value /= 10;
+		} while (value != 0);
+
+		return count;
+	}
+
+	/**
+	 * Lay out a piece of text that doesn't change, so it can be drawn 
+	 * without measuring it again
+	 *
+	 * @param text The text to lay out
+	 * @return The laid out label
+	 */
+	public Label createLabel(String text) {
+		Label label = new Label();
+		label.glyphs = new int[text.length()];
+		label.offsets = new int[text.length()];
+		int x = 0;
+		for (int i=0;i<text.length();i++) {
+			label.glyphs[i] = indexOf(text.charAt(i));
+			label.offsets[i] = x;
+			x += advance[label.glyphs[i]];
+		}
+		label.width = x;
+		return label;
+	}
+
+	/**
+	 * Get the height of a line of text
+	 *
+	 * @return The height of a line
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Get the distance from the top of a line to the baseline
+	 *
+	 * @return The ascent of the font
+	 */
+	public int getAscent() {
+		return ascent;
+	}
+
+	/**
+	 * A piece of text laid out ready to draw
+	 */
+	public static class Label {
+		/** The index in the atlas of each character */
+		private int[] glyphs;
+		/** The offset of each character from the start of the label */
+		private int[] offsets;
+		/** The width of the label */
+		private int width;
+
+		/**
+		 * Get the width of the label
+		 *
+		 * @return The width of the label
+		 */
+		public int getWidth() {
+			return width;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.spaceinvaders;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.spaceinvader.timer.VirtualClock;
+
+/**
+ * Runs the game with no window at all, as fast as the machine allows.
+ * The simulation is moved on in the same fixed steps the window uses,
+ * but on a virtual clock that is stepped along with it rather than
+ * waiting for real time to pass. A simple autopilot keeps the ship
+ * sweeping back and forth firing, and starts a new game whenever the
+ * last one ends.
+ * <p>
+ * The number of ticks run each second of real time is reported as it
+ * goes, along with how much faster than real time that is.
+ * <p>
+ * The run can be recorded, and played back with the ReplayPlayer. With
+ * -Dspaceinvaders.metrics=true each phase of the updates is timed (@see
+ * FrameMetrics) and summarised at the end.
+ * <p>
+ * Usage: HeadlessRunner [seconds to run for, default 10] [replay log to record]
+ *
+ */
+public class HeadlessRunner {
+	/** The length of each update (ms), the same as the window uses */
+	private static final long UPDATE_INTERVAL = 8;
+	/** The time the autopilot spends moving in each direction (ms) */
+	private static final long SWEEP_TIME = 2000;
+
+	/**
+	 * The entry point to the headless runner
+	 *
+	 * @param argv The arguments passed in, optionally the number of
+	 * seconds of real time to run for and the log to record to
+	 * @throws IOException Indicates a failure to write the replay log
+	 */
+	public static void main(String argv[]) throws IOException {
+		long seconds = argv.length > 0 ? Long.parseLong(argv[0]) : 10;
+
+		VirtualClock clock = new VirtualClock();
+		long seed = new Random().nextLong();
+		int settings = Simulation.getSettingsFromProperties();
+		Simulation simulation = new Simulation(Playfield.WIDTH,Playfield.HEIGHT,seed,clock,settings);
+		ReplayRecorder recorder = null;
+		if (argv.length > 1) {
+			recorder = new ReplayRecorder(argv[1],seed,Playfield.WIDTH,Playfield.HEIGHT,UPDATE_INTERVAL,settings);
+			simulation.setListener(recorder);
+		}
+		FrameMetrics metrics = null;
+		if ("true".equals(System.getProperty("spaceinvaders.metrics"))) {
+			metrics = new FrameMetrics();
+			metrics.register();
+			simulation.setMetrics(metrics);
+		}
+
+		long startTime = System.nanoTime();
+		long endTime = startTime + (seconds * 1000000000L);
+		long reportTime = startTime;
+		long ticks = 0;
+		long reportTicks = 0;
+		long games = 0;
+		long simulated = 0;
+
+		while (true) {
+			long now = System.nanoTime();
+			if (now - reportTime >= 1000000000L) {
+				System.out.println("Ticks/sec: "+(ticks - reportTicks)+
+						" ("+((ticks - reportTicks) * UPDATE_INTERVAL / 1000)+"x real time)"+
+						", Entities: "+simulation.getWorld().size()+
+						", Shots: "+simulation.getProjectiles().getLiveCount());
+				reportTime = now;
+				reportTicks = ticks;
+			}
+			if (now >= endTime) {
+				break;
+			}
+
+			// the autopilot starts a game whenever one ends, then
+			// sweeps the ship back and forth firing constantly
+			if (simulation.isWaitingForKeyPress()) {
+				simulation.start();
+				games++;
+			}
+			boolean left = (simulation.getScore() + (simulated / SWEEP_TIME)) % 2 == 0;
+			simulation.setLeftPressed(left);
+			simulation.setRightPressed(!left);
+			simulation.setFirePressed(true);
+
+			simulation.update(UPDATE_INTERVAL);
+			clock.advance(UPDATE_INTERVAL * 1000000);
+			simulated += UPDATE_INTERVAL;
+			ticks++;
+		}
+
+		if (recorder != null) {
+			recorder.finish(simulation);
+		}
+
+		double elapsed = (System.nanoTime() - startTime) / 1000000000.0;
+		System.out.println("Ran "+ticks+" ticks ("+(simulated / 1000)+"s of play, "+games+" games) in "+
+				(int) elapsed+"s: "+(int) (ticks / elapsed)+" ticks/sec");
+		if (metrics != null) {
+			System.out.println(metrics.getReport());
+		}
+	}
+}
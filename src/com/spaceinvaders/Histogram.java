@@ -0,0 +1,133 @@
+package com.spaceinvaders;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A cheap histogram of non-negative values (times in nanoseconds, bytes
+ * allocated), for finding the typical and worst cases without keeping
+ * every value. Values are counted in buckets that double in width every
+ * eight buckets, so any value is placed to within an eighth of itself,
+ * and recording one is a handful of instructions with no allocation.
+ * <p>
+ * One thread records values while any other reads them. Reading while
+ * values are being recorded, or resetting, can be out by the values 
+ * recorded at that moment, which is fine for statistics.
+ *
+ */
+public class Histogram {
+	/** The number of bits of each value kept exactly */
+	private static final int SUB_BITS = 3;
+	/** The number of buckets each time the bucket width doubles */
+	private static final int SUB = 1 << SUB_BITS;
+	/** The number of buckets needed for any long value */
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+	/** The number of values in each bucket */
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/** The number of values recorded */
+	private AtomicLong count = new AtomicLong();
+	/** The largest value recorded */
+	private AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value. Only ever called from one thread at a time.
+	 *
+	 * @param value The value to record, negative values count as zero
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int bucket = bucket(value);
+		counts.lazySet(bucket,counts.get(bucket) + 1);
+		count.lazySet(count.get() + 1);
+		if (value > max.get()) {
+			max.lazySet(value);
+		}
+	}
+
+	/**
+	 * Get the bucket a value is counted in
+	 *
+	 * @param value The value
+	 * @return The index of the bucket
+	 */
+	private static int bucket(long value) {
+		if (value < SUB) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB - 1));
+	}
+
+	/**
+	 * Get the largest value counted in a bucket
+	 *
+	 * @param bucket The index of the bucket
+	 * @return The largest value in the bucket
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB) {
+			return bucket;
+		}
+		int shift = (bucket >> SUB_BITS) - 1;
+		long lower = (long) (SUB + (bucket & (SUB - 1))) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	/**
+	 * Get the value a given fraction of the values recorded are at or
+	 * below
+	 *
+	 * @param fraction The fraction of values, from 0 to 1 (0.99 for the
+	 * 99th percentile)
+	 * @return The value, to within an eighth, or 0 if nothing has been
+	 * recorded
+	 */
+	public long getPercentile(double fraction) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1,(long) Math.ceil(total * fraction));
+		long seen = 0;
+		for (int i=0;i<BUCKETS;i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(upperBound(i),max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Get the largest value recorded
+	 *
+	 * @return The largest value, or 0 if nothing has been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the number of values recorded
+	 *
+	 * @return The number of values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Forget every value recorded so far
+	 */
+	public void reset() {
+		for (int i=0;i<BUCKETS;i++) {
+			counts.set(i,0);
+		}
+		count.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,129 @@
+package com.spaceinvaders;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+
+/**
+ * Draws the level, score and waiting messages over the game using a
+ * glyph atlas (@see GlyphAtlas). The labels are laid out once, the 
+ * numbers are drawn straight from their values, and the message is only
+ * laid out again when it changes, so a frame of HUD creates no garbage.
+ * <p>
+ * The HUD is laid out in the playfield (@see Playfield), with the font
+ * drawn into the atlas at the size the playfield is shown at.
+ * <p>
+ * Only used from the render thread.
+ *
+ */
+public class HudRenderer {
+	/** The right hand edge the HUD is laid out against */
+	private static final int RIGHT = 1350;
+	/** The font the HUD is drawn in, at a scale of 1 */
+	private static final Font FONT = new Font("Serif",Font.BOLD,15);
+
+	/** The mapping of the playfield onto the surface drawn on */
+	private Playfield playfield = new Playfield(Playfield.WIDTH,Playfield.HEIGHT);
+	/** The characters of the HUD font */
+	private GlyphAtlas atlas;
+	/** The label before the level */
+	private GlyphAtlas.Label levelLabel;
+	/** The label before the score */
+	private GlyphAtlas.Label scoreLabel;
+	/** The prompt shown under the message while waiting */
+	private GlyphAtlas.Label pressAnyKey;
+	/** The message last laid out */
+	private String message;
+	/** The layout of the message last laid out */
+	private GlyphAtlas.Label messageLabel;
+
+	/**
+	 * Create a new HUD renderer, drawing at a scale of 1
+	 */
+	public HudRenderer() {
+		createAtlas(FONT);
+	}
+
+	/**
+	 * Set the mapping of the playfield onto the surface drawn on, 
+	 * drawing the font again if the scale has changed
+	 *
+	 * @param playfield The mapping of the playfield onto the surface
+	 */
+	public void setPlayfield(Playfield playfield) {
+		if (playfield.getScale() != this.playfield.getScale()) {
+			createAtlas(FONT.deriveFont((float) (FONT.getSize2D() * playfield.getScale())));
+		}
+		this.playfield = playfield;
+	}
+
+	/**
+	 * Draw the font into a new atlas and lay the labels out again
+	 *
+	 * @param font The font to draw the HUD in
+	 */
+	private void createAtlas(Font font) {
+		atlas = new GlyphAtlas(font,Color.white);
+		levelLabel = atlas.createLabel("Current Level: ");
+		scoreLabel = atlas.createLabel("Total Score: ");
+		pressAnyKey = atlas.createLabel("Press any key");
+		message = null;
+		messageLabel = null;
+	}
+
+	/**
+	 * Draw the HUD for a snapshot of the game
+	 *
+	 * @param g The graphics context to draw on
+	 * @param snapshot The snapshot of the game to draw the HUD for
+	 * @param dirty The regions to mark everything drawn in, or null to
+	 * not mark them
+	 */
+	public void draw(Graphics g,RenderSnapshot snapshot,DirtyRegions dirty) {
+		// the level and score line up at the left, placed twice the
+		// width of the level line back from the right edge
+		int left = playfield.getOffsetX();
+		int right = playfield.toSurfaceX(RIGHT);
+		int x = right - (2 * (levelLabel.getWidth() + atlas.getWidth(snapshot.level)));
+		int y = playfield.toSurfaceY(30);
+		int width = atlas.drawLabel(g,levelLabel,x,y);
+		width += atlas.drawNumber(g,snapshot.level,x + width,y);
+		mark(dirty,x,y,width);
+
+		y = playfield.toSurfaceY(50);
+		width = atlas.drawLabel(g,scoreLabel,x,y);
+		width += atlas.drawNumber(g,snapshot.score,x + width,y);
+		mark(dirty,x,y,width);
+
+		// if we're waiting for an "any key" press then draw the 
+		// current message 
+		if (snapshot.waitingForKeyPress) {
+			if (snapshot.message != message) {
+				message = snapshot.message;
+				messageLabel = atlas.createLabel(message);
+			}
+
+			x = left + ((right - left - messageLabel.getWidth()) / 2);
+			y = playfield.toSurfaceY(300);
+			mark(dirty,x,y,atlas.drawLabel(g,messageLabel,x,y));
+			x = left + ((right - left - pressAnyKey.getWidth()) / 2);
+			y = playfield.toSurfaceY(350);
+			mark(dirty,x,y,atlas.drawLabel(g,pressAnyKey,x,y));
+		}
+	}
+
+	/**
+	 * Mark a line of text as drawn over
+	 *
+	 * @param dirty The regions to mark, or null to not mark them
+	 * @param x The x location of the start of the text
+	 * @param y The y location of the baseline
+	 * @param width The width of the text
+	 */
+	private void mark(DirtyRegions dirty,int x,int y,int width) {
+		if (dirty != null) {
+			// allow for characters reaching outside their advance
+			dirty.add(x-2,y-atlas.getAscent(),width+4,atlas.getHeight());
+		}
+	}
+}
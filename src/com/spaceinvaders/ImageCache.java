@@ -0,0 +1,205 @@
+package com.spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The decoded images of the game's resources, shared by everything that
+ * needs the pixels (the sprite shapes, the sprite store and the 
+ * background) so each image is only decoded once.
+ * <p>
+ * Images can be decoded ahead of time on other threads (@see 
+ * AssetPreloader). Asking for an image that's being decoded waits for 
+ * it, asking for one nobody has started on decodes it there and then.
+ * Any number of threads can ask at once.
+ * <p>
+ * With a disk cache attached (@see AssetCache) images are copied out of
+ * the cache where they're up to date, and only decoded where they're not.
+ * Every image is then held as TYPE_INT_ARGB, however it was loaded.
+ * <p>
+ * [singleton]
+ *
+ */
+public class ImageCache {
+	/** The single instance of this class */
+	private static ImageCache single = new ImageCache();
+
+	/**
+	 * Get the single instance of this class
+	 *
+	 * @return The single instance of this class
+	 */
+	public static ImageCache get() {
+		return single;
+	}
+
+	/** The decoding of each image, finished or not, indexed by its reference */
+	private ConcurrentHashMap<String,FutureTask<BufferedImage>> images = new ConcurrentHashMap<String,FutureTask<BufferedImage>>();
+	/** The time taken to decode each image (ns), indexed by its reference */
+	private ConcurrentHashMap<String,Long> decodeTimes = new ConcurrentHashMap<String,Long>();
+	/** The references of the images copied out of the disk cache rather than decoded */
+	private ConcurrentHashMap<String,Boolean> cached = new ConcurrentHashMap<String,Boolean>();
+	/** The cache of decoded images on disk, or null if there isn't one */
+	private volatile AssetCache diskCache;
+
+	/**
+	 * Attach a cache of decoded images on disk, used by every image 
+	 * decoded from then on
+	 *
+	 * @param diskCache The cache to use, or null for none
+	 */
+	public void setDiskCache(AssetCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * Get the cache of decoded images on disk
+	 *
+	 * @return The cache in use, or null if there isn't one
+	 */
+	public AssetCache getDiskCache() {
+		return diskCache;
+	}
+
+	/**
+	 * Check if an image was copied out of the disk cache rather than 
+	 * decoded
+	 *
+	 * @param ref The reference to the image
+	 * @return True if the image came from the disk cache
+	 */
+	public boolean isFromDiskCache(String ref) {
+		return cached.containsKey(ref);
+	}
+
+	/**
+	 * Get the decoded image for a resource, waiting for it to be decoded
+	 * if need be
+	 *
+	 * @param ref The reference to the image
+	 * @return The decoded image
+	 */
+	public BufferedImage getImage(String ref) {
+		FutureTask<BufferedImage> task = images.get(ref);
+		if (task == null) {
+			task = start(ref);
+		}
+
+		// if nobody has started decoding it yet (it's never been asked
+		// for, or it's still queued to be preloaded) decode it here. 
+		// Otherwise this does nothing and we wait below
+		task.run();
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Util.fail("Interrupted loading: "+ref);
+		} catch (ExecutionException e) {
+			Util.fail("Failed to load: "+ref);
+		}
+		return null;
+	}
+
+	/**
+	 * Start decoding an image on an executor, unless it's already been
+	 * started
+	 *
+	 * @param ref The reference to the image
+	 * @param executor The executor to decode the image on
+	 */
+	public void preload(String ref,Executor executor) {
+		if (!images.containsKey(ref)) {
+			executor.execute(start(ref));
+		}
+	}
+
+	/**
+	 * Get the time taken to decode an image
+	 *
+	 * @param ref The reference to the image
+	 * @return The time taken to decode the image (ns), or -1 if it 
+	 * hasn't been decoded
+	 */
+	public long getDecodeTime(String ref) {
+		Long time = decodeTimes.get(ref);
+		return time == null ? -1 : time.longValue();
+	}
+
+	/**
+	 * Get the task decoding an image, creating it if it doesn't exist.
+	 * A task only ever runs once, however many threads run it.
+	 *
+	 * @param ref The reference to the image
+	 * @return The task decoding the image
+	 */
+	private FutureTask<BufferedImage> start(final String ref) {
+		FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+			public BufferedImage call() throws IOException {
+				return decode(ref);
+			}
+		});
+		FutureTask<BufferedImage> existing = images.putIfAbsent(ref,task);
+		return existing == null ? task : existing;
+	}
+
+	/**
+	 * Decode an image from the resources
+	 *
+	 * @param ref The reference to the image
+	 * @return The decoded image
+	 * @throws IOException Indicates a failure to read the image
+	 */
+	private BufferedImage decode(String ref) throws IOException {
+		long start = System.nanoTime();
+
+		// The ClassLoader.getResource() ensures we get the image
+		// from the appropriate place, this helps with deploying the game
+		// with things like webstart.
+		URL url = this.getClass().getClassLoader().getResource(ref);
+		if (url == null) {
+			throw new IOException("Can't find ref: "+ref);
+		}
+
+		AssetCache disk = diskCache;
+		if (disk != null) {
+			BufferedImage image = disk.load(ref,url);
+			if (image != null) {
+				cached.put(ref,Boolean.TRUE);
+				decodeTimes.put(ref,Long.valueOf(System.nanoTime() - start));
+				return image;
+			}
+		}
+
+		BufferedImage image = ImageIO.read(url);
+		if (image == null) {
+			throw new IOException("Not an image: "+ref);
+		}
+		if (disk != null) {
+			// hold the image the same way it'll be loaded from the 
+			// cache next time
+			if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+				BufferedImage argb = new BufferedImage(image.getWidth(),image.getHeight(),BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g = argb.createGraphics();
+				g.setComposite(AlphaComposite.Src);
+				g.drawImage(image,0,0,null);
+				g.dispose();
+				image = argb;
+			}
+			disk.put(ref,url,image);
+		}
+
+		decodeTimes.put(ref,Long.valueOf(System.nanoTime() - start));
+		return image;
+	}
+}
@@ -0,0 +1,75 @@
+package com.spaceinvaders;
+
+/**
+ * The system responsible for moving every entity in the world based
+ * on its speed and the time that has passed. The ship stops at the
+ * edges of the play area, while the aliens and obstacles are placed
+ * relative to the formation they march in.
+ *
+ */
+public class MovementSystem {
+	/**
+	 * Record where every entity is at the start of the loop without
+	 * moving anything, used while the game is paused
+	 *
+	 * @param world The world holding the entities
+	 */
+	public void hold(EntityWorld world) {
+		int count = world.count;
+		System.arraycopy(world.x,0,world.prevX,0,count);
+		System.arraycopy(world.y,0,world.prevY,0,count);
+	}
+
+	/**
+	 * Move every entity in the world
+	 *
+	 * @param world The world holding the entities
+	 * @param formation The formation the aliens march in
+	 * @param delta The amount of time that has passed in milliseconds
+	 * @return True if the formation has reached the bottom of the screen
+	 */
+	public boolean move(EntityWorld world,AlienFormation formation,long delta) {
+		double[] x = world.x;
+		double[] y = world.y;
+		double[] dx = world.dx;
+		double[] dy = world.dy;
+		double[] offsetX = world.offsetX;
+		double[] offsetY = world.offsetY;
+		int[] flags = world.flags;
+		double left = world.leftEdge;
+		double right = world.rightEdge;
+
+		// remember where everything was so fast entities can have
+		// their whole path checked for collisions
+		hold(world);
+
+		// the formation turns and steps down as a whole
+		boolean reachedBottom = formation.move(delta);
+		double formationX = formation.getX();
+		double formationY = formation.getY();
+
+		for (int i=0;i<world.count;i++) {
+			int f = flags[i];
+
+			// members of the formation simply keep their place in it
+			if ((f & EntityWorld.IN_FORMATION) != 0) {
+				x[i] = formationX + offsetX[i];
+				y[i] = formationY + offsetY[i];
+				continue;
+			}
+
+			// some entities (the ship) simply won't move past the edges
+			if ((f & EntityWorld.STOP_AT_EDGES) != 0) {
+				if (((dx[i] < 0) && (x[i] < left)) || ((dx[i] > 0) && (x[i] > right))) {
+					continue;
+				}
+			}
+
+			// update the location of the entity based on move speeds
+			x[i] += (delta * dx[i]) / 1000;
+			y[i] += (delta * dy[i]) / 1000;
+		}
+
+		return reachedBottom;
+	}
+}
@@ -0,0 +1,114 @@
+package com.spaceinvaders;
+
+/**
+ * The final stage of collision detection, deciding if two bodies
+ * really did touch this loop. The bounding boxes are checked first,
+ * sweeping along the path of each body when either is fast moving.
+ * Optionally, once the boxes overlap, the solid pixels of each body's
+ * collision mask are compared as well so transparent corners don't
+ * cause hits.
+ *
+ */
+public class Narrowphase {
+	/** The most steps we'll take along a sweep looking for overlapping pixels */
+	private static final int MAX_PIXEL_STEPS = 256;
+	/** The continuous check used when either body is fast moving */
+	private SweptCollision sweep = new SweptCollision();
+	/** True if bodies whose bounds overlap should also have their pixels checked */
+	private boolean pixelPerfect;
+
+	/**
+	 * Indicate whether the solid pixels of bodies should be checked
+	 * once their bounds are known to overlap
+	 *
+	 * @param pixelPerfect True if pixels should be checked
+	 */
+	public void setPixelPerfect(boolean pixelPerfect) {
+		this.pixelPerfect = pixelPerfect;
+	}
+
+	/**
+	 * Check if two bodies touched this loop. The size of each body is
+	 * taken from its collision mask.
+	 *
+	 * @param ax0 The previous x location of the first body
+	 * @param ay0 The previous y location of the first body
+	 * @param ax1 The current x location of the first body
+	 * @param ay1 The current y location of the first body
+	 * @param a The collision mask of the first body
+	 * @param bx0 The previous x location of the second body
+	 * @param by0 The previous y location of the second body
+	 * @param bx1 The current x location of the second body
+	 * @param by1 The current y location of the second body
+	 * @param b The collision mask of the second body
+	 * @param swept True if the whole paths of the bodies should be checked,
+	 * rather than just where they ended up
+	 * @return True if the bodies collided
+	 */
+	public boolean test(double ax0,double ay0,double ax1,double ay1,CollisionMask a,
+						double bx0,double by0,double bx1,double by1,CollisionMask b,boolean swept) {
+		if (!swept) {
+			int myX = (int) ax1;
+			int myY = (int) ay1;
+			int hisX = (int) bx1;
+			int hisY = (int) by1;
+
+			if ((myX >= hisX + b.getWidth()) || (hisX >= myX + a.getWidth()) ||
+				(myY >= hisY + b.getHeight()) || (hisY >= myY + a.getHeight())) {
+				return false;
+			}
+			return !pixelPerfect || a.overlaps(b,hisX-myX,hisY-myY);
+		}
+
+		if (!sweep.test(ax0,ay0,ax1,ay1,a.getWidth(),a.getHeight(),
+						bx0,by0,bx1,by1,b.getWidth(),b.getHeight())) {
+			return false;
+		}
+		if (!pixelPerfect) {
+			return true;
+		}
+
+		// work out when during the loop our boxes overlapped, then step
+		// along that period so neither body moves more than a pixel on 
+		// either axis between steps, comparing masks
+		double entry = sweep.getEntry();
+		double exit = sweep.getExit();
+		double moveX = Math.abs(ax1 - ax0) + Math.abs(bx1 - bx0);
+		double moveY = Math.abs(ay1 - ay0) + Math.abs(by1 - by0);
+		double distance = Math.max(moveX,moveY) * (exit - entry);
+		int steps = Math.min(MAX_PIXEL_STEPS,(int) Math.ceil(distance) + 1);
+
+		int lastX = 0;
+		int lastY = 0;
+		for (int i=0;i<=steps;i++) {
+			double t = entry + ((exit - entry) * i) / steps;
+			int myX = (int) (ax0 + ((ax1 - ax0) * t));
+			int myY = (int) (ay0 + ((ay1 - ay0) * t));
+			int hisX = (int) (bx0 + ((bx1 - bx0) * t));
+			int hisY = (int) (by0 + ((by1 - by0) * t));
+			int offsetX = hisX - myX;
+			int offsetY = hisY - myY;
+
+			if (i == 0) {
+				if (a.overlaps(b,offsetX,offsetY)) {
+					return true;
+				}
+			} else {
+				// the bodies' pixels can change on both axes in one step,
+				// so check every offset they could have passed through
+				// on the way, not just where they ended up
+				for (int x=Math.min(lastX,offsetX);x<=Math.max(lastX,offsetX);x++) {
+					for (int y=Math.min(lastY,offsetY);y<=Math.max(lastY,offsetY);y++) {
+						if (((x != lastX) || (y != lastY)) && a.overlaps(b,x,y)) {
+							return true;
+						}
+					}
+				}
+			}
+			lastX = offsetX;
+			lastY = offsetY;
+		}
+
+		return false;
+	}
+}
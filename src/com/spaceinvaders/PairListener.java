@@ -0,0 +1,17 @@
+package com.spaceinvaders;
+
+/**
+ * A listener notified by a broadphase of each pair of entities
+ * that might be colliding.
+ *
+ */
+public interface PairListener {
+	/**
+	 * Notification that two entities may be colliding
+	 *
+	 * @param world The world holding the entities
+	 * @param me The slot of the first entity in the pair
+	 * @param him The slot of the second entity in the pair
+	 */
+	public void pair(EntityWorld world, int me, int him);
+}
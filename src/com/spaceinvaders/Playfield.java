@@ -0,0 +1,120 @@
+package com.spaceinvaders;
+
+/**
+ * The fixed area the game is played in, and where it lands on the 
+ * surface it's drawn to. The game logic works entirely in the playfield's
+ * own units (WIDTH by HEIGHT) whatever the size of the screen, and only
+ * the drawing maps those onto real pixels.
+ * <p>
+ * The playfield is scaled by the same amount in both directions to fit
+ * the surface as closely as it can, and centred on it. Any space left
+ * over at the sides or top and bottom just shows the background.
+ *
+ */
+public class Playfield {
+	/** The width of the playfield */
+	public static final int WIDTH = 1366;
+	/** The height of the playfield */
+	public static final int HEIGHT = 768;
+
+	/** The width of the surface drawn to */
+	private int surfaceWidth;
+	/** The height of the surface drawn to */
+	private int surfaceHeight;
+	/** The number of surface pixels for each unit of the playfield */
+	private double scale;
+	/** The x location of the playfield's left edge on the surface */
+	private int offsetX;
+	/** The y location of the playfield's top edge on the surface */
+	private int offsetY;
+
+	/**
+	 * Fit the playfield to a surface
+	 *
+	 * @param surfaceWidth The width of the surface drawn to
+	 * @param surfaceHeight The height of the surface drawn to
+	 */
+	public Playfield(int surfaceWidth,int surfaceHeight) {
+		this.surfaceWidth = Math.max(1,surfaceWidth);
+		this.surfaceHeight = Math.max(1,surfaceHeight);
+		scale = Math.min((double) this.surfaceWidth / WIDTH,(double) this.surfaceHeight / HEIGHT);
+		offsetX = (this.surfaceWidth - (int) (WIDTH * scale)) / 2;
+		offsetY = (this.surfaceHeight - (int) (HEIGHT * scale)) / 2;
+	}
+
+	/**
+	 * Get the location on the surface of an x location in the playfield
+	 *
+	 * @param x The x location in the playfield
+	 * @return The x location on the surface
+	 */
+	public int toSurfaceX(double x) {
+		return offsetX + (int) (x * scale);
+	}
+
+	/**
+	 * Get the location on the surface of a y location in the playfield
+	 *
+	 * @param y The y location in the playfield
+	 * @return The y location on the surface
+	 */
+	public int toSurfaceY(double y) {
+		return offsetY + (int) (y * scale);
+	}
+
+	/**
+	 * Get the number of surface pixels for each unit of the playfield
+	 *
+	 * @return The scale the playfield is drawn at
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * Get the x location of the playfield's left edge on the surface
+	 *
+	 * @return The x offset of the playfield
+	 */
+	public int getOffsetX() {
+		return offsetX;
+	}
+
+	/**
+	 * Get the y location of the playfield's top edge on the surface
+	 *
+	 * @return The y offset of the playfield
+	 */
+	public int getOffsetY() {
+		return offsetY;
+	}
+
+	/**
+	 * Get the width of the surface drawn to
+	 *
+	 * @return The width of the surface
+	 */
+	public int getSurfaceWidth() {
+		return surfaceWidth;
+	}
+
+	/**
+	 * Get the height of the surface drawn to
+	 *
+	 * @return The height of the surface
+	 */
+	public int getSurfaceHeight() {
+		return surfaceHeight;
+	}
+
+	/**
+	 * Check if this playfield maps onto a surface of the given size
+	 *
+	 * @param width The width of the surface
+	 * @param height The height of the surface
+	 * @return True if this playfield was fitted to a surface of that size
+	 */
+	public boolean fits(int width,int height) {
+		return (width == surfaceWidth) && (height == surfaceHeight);
+	}
+}
@@ -0,0 +1,17 @@
+package com.spaceinvaders;
+
+/**
+ * A listener notified by the projectile manager when a projectile
+ * hits something.
+ *
+ */
+public interface ProjectileListener {
+	/**
+	 * Notification that a projectile has hit an entity. The projectile
+	 * has already been removed by the time this is called.
+	 *
+	 * @param side The side that fired the projectile (@see ProjectileManager)
+	 * @param target The entity that was hit
+	 */
+	public void projectileHit(int side, Entity target);
+}
@@ -0,0 +1,341 @@
+package com.spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * The manager for every shot in flight, fired by either the player or
+ * the aliens. Shots are kept in a fixed size pool of primitive arrays
+ * allocated up front. Firing takes a bullet from a free list and a hit
+ * or leaving the screen puts it back, so once the game is running no
+ * objects are created for shots at all.
+ * <p>
+ * Live bullets are kept in a dense list so moving, colliding and
+ * drawing them only visits the bullets actually in use. Removing a
+ * bullet swaps the last live bullet into its place. Bullets fired during
+ * a loop wait just past the end of the list until commit() is called,
+ * so firing never disturbs a walk over the live bullets.
+ * <p>
+ * The state drawn for each bullet is package visible so the renderer
+ * can get at it, the manager itself knows nothing of the display.
+ *
+ */
+public class ProjectileManager {
+	/** The side for shots fired by the player */
+	public static final int PLAYER = 0;
+	/** The side for shots fired by the aliens */
+	public static final int ALIEN = 1;
+
+	/** The most bullets that can be in flight at once */
+	private int capacity;
+	/** The x location of each bullet */
+	double[] x;
+	/** The y location of each bullet */
+	double[] y;
+	/** The x location of each bullet at the start of the loop */
+	double[] prevX;
+	/** The y location of each bullet at the start of the loop */
+	double[] prevY;
+	/** The horizontal speed of each bullet (pixels/sec) */
+	double[] dx;
+	/** The vertical speed of each bullet (pixels/sec) */
+	double[] dy;
+	/** The side that fired each bullet */
+	int[] side;
+	/** The bullets currently in flight */
+	int[] live;
+	/** The position of each bullet in the live list */
+	private int[] livePosition;
+	/** The number of bullets in flight */
+	int liveCount;
+	/** The number of bullets fired this loop, waiting after the live ones */
+	private int firedCount;
+	/** The bullets available to be fired */
+	private int[] free;
+	/** The number of bullets available to be fired */
+	private int freeCount;
+
+	/** The slots of the entities that can be hit by each side, gathered each loop */
+	private int[][] targets = new int[2][64];
+	/** The number of entities that can be hit by each side */
+	private int[] targetCount = new int[2];
+
+	/** The id of the sprite drawn for every bullet */
+	private int spriteId;
+	/** The solid pixels of the bullet sprite */
+	private CollisionMask mask;
+	/** The listener notified when a bullet hits something */
+	private ProjectileListener listener;
+	/** The width of the play area, bullets wholly outside it are off the screen */
+	private double width = Playfield.WIDTH;
+	/** The height of the play area, bullets wholly outside it are off the screen */
+	private double height = Playfield.HEIGHT;
+	/** The number of shots that couldn't be fired because the pool was empty */
+	private int dropped;
+
+	/**
+	 * Create a new projectile manager
+	 *
+	 * @param capacity The most bullets that can be in flight at once
+	 * @param ref The reference to the sprite drawn for each bullet
+	 * @param listener The listener notified when a bullet hits something
+	 */
+	public ProjectileManager(int capacity,String ref,ProjectileListener listener) {
+		this.capacity = capacity;
+		this.listener = listener;
+
+		x = new double[capacity];
+		y = new double[capacity];
+		prevX = new double[capacity];
+		prevY = new double[capacity];
+		dx = new double[capacity];
+		dy = new double[capacity];
+		side = new int[capacity];
+		live = new int[capacity];
+		livePosition = new int[capacity];
+		free = new int[capacity];
+
+		// every bullet starts out free, handed out lowest first
+		for (int i=0;i<capacity;i++) {
+			free[i] = capacity - 1 - i;
+		}
+		freeCount = capacity;
+
+		spriteId = SpriteShapes.get().getId(ref);
+		mask = SpriteShapes.get().getMask(spriteId);
+	}
+
+	/**
+	 * Fire a new bullet. It starts moving once commit() is called.
+	 *
+	 * @param x The initial x location of the bullet
+	 * @param y The initial y location of the bullet
+	 * @param dx The horizontal speed of the bullet (pixels/sec)
+	 * @param dy The vertical speed of the bullet (pixels/sec)
+	 * @param side The side firing the bullet
+	 * @return True if the bullet was fired, false if the pool is empty
+	 */
+	public boolean fire(double x,double y,double dx,double dy,int side) {
+		if (freeCount == 0) {
+			dropped++;
+			return false;
+		}
+
+		int bullet = free[--freeCount];
+		this.x[bullet] = x;
+		this.y[bullet] = y;
+		prevX[bullet] = x;
+		prevY[bullet] = y;
+		this.dx[bullet] = dx;
+		this.dy[bullet] = dy;
+		this.side[bullet] = side;
+
+		int position = liveCount + firedCount++;
+		livePosition[bullet] = position;
+		live[position] = bullet;
+
+		return true;
+	}
+
+	/**
+	 * Put the bullets fired this loop into flight
+	 */
+	public void commit() {
+		liveCount += firedCount;
+		firedCount = 0;
+	}
+
+	/**
+	 * Return a bullet to the pool
+	 *
+	 * @param bullet The bullet to release
+	 */
+	private void release(int bullet) {
+		// swap the last live bullet into the gap
+		int position = livePosition[bullet];
+		int last = live[--liveCount];
+		live[position] = last;
+		livePosition[last] = position;
+
+		// keep any bullets fired this loop straight after the live ones
+		if (firedCount > 0) {
+			int fired = live[liveCount + firedCount];
+			live[liveCount] = fired;
+			livePosition[fired] = liveCount;
+		}
+
+		free[freeCount++] = bullet;
+	}
+
+	/**
+	 * Remove every bullet
+	 */
+	public void clear() {
+		commit();
+		while (liveCount > 0) {
+			release(live[liveCount-1]);
+		}
+	}
+
+	/**
+	 * Record where every bullet is without moving them, used while
+	 * the game is paused
+	 */
+	public void hold() {
+		for (int i=0;i<liveCount;i++) {
+			int b = live[i];
+			prevX[b] = x[b];
+			prevY[b] = y[b];
+		}
+	}
+
+	/**
+	 * Set the size of the play area bullets are released outside of
+	 *
+	 * @param width The width of the play area
+	 * @param height The height of the play area
+	 */
+	public void setBounds(double width,double height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Move every bullet, releasing those that have left the play area
+	 * by any side. A bullet is only released once the whole of its path
+	 * this loop is off the same side, so a long loop can't carry it past
+	 * a target and out before collide() has checked its path.
+	 *
+	 * @param delta The amount of time that has passed in milliseconds
+	 */
+	public void move(long delta) {
+		double left = -mask.getWidth();
+		double top = -mask.getHeight();
+
+		// walk backwards so releasing a bullet only disturbs the
+		// part of the list we've already visited
+		for (int i=liveCount-1;i>=0;i--) {
+			int b = live[i];
+			prevX[b] = x[b];
+			prevY[b] = y[b];
+			x[b] += (delta * dx[b]) / 1000;
+			y[b] += (delta * dy[b]) / 1000;
+
+			if (((x[b] < left) && (prevX[b] < left)) || ((x[b] > width) && (prevX[b] > width)) ||
+				((y[b] < top) && (prevY[b] < top)) || ((y[b] > height) && (prevY[b] > height))) {
+				release(b);
+			}
+		}
+	}
+
+	/**
+	 * Check every bullet against the entities its side can hit. The
+	 * whole path of each bullet this loop is checked so a long loop
+	 * can't carry it through a target.
+	 *
+	 * @param world The world holding the entities that can be hit
+	 * @param narrowphase The check used to decide if a bullet hit
+	 */
+	public void collide(EntityWorld world,Narrowphase narrowphase) {
+		if (liveCount == 0) {
+			return;
+		}
+
+		gatherTargets(world);
+		SpriteShapes shapes = SpriteShapes.get();
+
+		for (int i=liveCount-1;i>=0;i--) {
+			int b = live[i];
+			int s = side[b];
+			int[] slots = targets[s];
+
+			for (int t=0;t<targetCount[s];t++) {
+				int target = slots[t];
+				if (world.isRemoved(target)) {
+					continue;
+				}
+
+				if (narrowphase.test(prevX[b],prevY[b],x[b],y[b],mask,
+									 world.prevX[target],world.prevY[target],world.x[target],world.y[target],
+									 shapes.getMask(world.sprite[target]),true)) {
+					// a bullet is used up by the first thing it hits
+					release(b);
+					listener.projectileHit(s,world.getOwner(target));
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gather up the entities that each side's bullets can hit based
+	 * on their collision masks
+	 *
+	 * @param world The world holding the entities
+	 */
+	private void gatherTargets(EntityWorld world) {
+		int playerBit = CollisionLayer.bit(CollisionLayer.PLAYER_SHOT);
+		int alienBit = CollisionLayer.bit(CollisionLayer.ALIEN_SHOT);
+		targetCount[PLAYER] = 0;
+		targetCount[ALIEN] = 0;
+
+		for (int i=0;i<world.size();i++) {
+			int m = world.mask[i];
+			if ((m & playerBit) != 0) {
+				addTarget(PLAYER,i);
+			}
+			if ((m & alienBit) != 0) {
+				addTarget(ALIEN,i);
+			}
+		}
+	}
+
+	/**
+	 * Add an entity to the list of those a side can hit
+	 *
+	 * @param side The side that can hit the entity
+	 * @param slot The slot of the entity
+	 */
+	private void addTarget(int side,int slot) {
+		if (targetCount[side] == targets[side].length) {
+			targets[side] = Arrays.copyOf(targets[side],targetCount[side]*2);
+		}
+		targets[side][targetCount[side]++] = slot;
+	}
+
+	/**
+	 * Get the id of the sprite drawn for every bullet
+	 *
+	 * @return The id of the bullet sprite
+	 */
+	public int getSpriteId() {
+		return spriteId;
+	}
+
+	/**
+	 * Get the number of bullets in flight
+	 *
+	 * @return The number of bullets in flight
+	 */
+	public int getLiveCount() {
+		return liveCount;
+	}
+
+	/**
+	 * Get the most bullets that can be in flight at once
+	 *
+	 * @return The capacity of the pool
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the number of shots that couldn't be fired because the
+	 * pool was empty
+	 *
+	 * @return The number of dropped shots
+	 */
+	public int getDropped() {
+		return dropped;
+	}
+}
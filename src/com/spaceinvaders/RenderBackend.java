@@ -0,0 +1,203 @@
+package com.spaceinvaders;
+
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
+import java.awt.Transparency;
+import java.awt.image.BufferStrategy;
+import java.awt.image.VolatileImage;
+
+/**
+ * Works out the best way of drawing the game on this machine and sets
+ * it up. The buffer strategies the screen supports are tried best first,
+ * falling back to the next whenever one can't be created:
+ * <p>
+ * - Page flipping with three buffers
+ * - Page flipping with two buffers
+ * - Copying (blitting) from an accelerated back buffer
+ * - Whatever AWT picks by itself
+ * <p>
+ * Page flipping is only tried where it doesn't need full screen 
+ * exclusive mode, which the game doesn't use. When the back buffer must
+ * keep what was drawn in it (dirty rendering, @see DirtyRegions), page
+ * flipping is asked to copy the back buffer forward rather than leave 
+ * it undefined.
+ * <p>
+ * The sprites are kept in video memory where the screen can accelerate
+ * a VolatileImage, and in managed images otherwise. This can be turned
+ * off with -Dspaceinvaders.volatilesprites=false to compare.
+ * <p>
+ * Everything chosen is described by getReport(), along with the rate 
+ * sprites can be drawn, so the path a machine really takes can be seen.
+ *
+ */
+public class RenderBackend {
+	/** The time spent measuring the rate sprites can be drawn (ns) */
+	private static final long BLIT_TEST_TIME = 100000000;
+
+	/** The canvas being drawn on */
+	private Canvas canvas;
+	/** The buffer strategy chosen */
+	private BufferStrategy strategy;
+	/** The number of buffers in the strategy chosen */
+	private int buffers;
+	/** The candidate that was chosen */
+	private String chosen;
+	/** True if the screen can hold sprites in video memory */
+	private boolean videoMemorySprites;
+	/** The number of sprites drawn each second when measured, or -1 if it hasn't been */
+	private long blitRate = -1;
+
+	/**
+	 * Probe the screen behind a canvas and create the best buffer 
+	 * strategy it supports. The canvas must be displayable.
+	 *
+	 * @param canvas The canvas to draw on
+	 * @param keepContents True if the back buffer must keep what was 
+	 * drawn in it from frame to frame
+	 */
+	public RenderBackend(Canvas canvas,boolean keepContents) {
+		this.canvas = canvas;
+		GraphicsConfiguration gc = canvas.getGraphicsConfiguration();
+		BufferCapabilities available = gc.getBufferCapabilities();
+
+		BufferCapabilities.FlipContents flipContents = keepContents ? 
+				BufferCapabilities.FlipContents.COPIED : BufferCapabilities.FlipContents.UNDEFINED;
+		ImageCapabilities accelerated = new ImageCapabilities(true);
+		boolean flipping = available.isPageFlipping() && !available.isFullScreenRequired();
+
+		boolean created = false;
+		if (flipping && available.isMultiBufferAvailable()) {
+			created = create(3,new BufferCapabilities(accelerated,accelerated,flipContents),"triple buffered page flipping");
+		}
+		if (!created && flipping) {
+			created = create(2,new BufferCapabilities(accelerated,accelerated,flipContents),"double buffered page flipping");
+		}
+		if (!created) {
+			created = create(2,new BufferCapabilities(accelerated,accelerated,null),"accelerated blitting");
+		}
+		if (!created) {
+			canvas.createBufferStrategy(2);
+			strategy = canvas.getBufferStrategy();
+			buffers = 2;
+			chosen = "default strategy";
+		}
+
+		// only keep the sprites in video memory if a VolatileImage 
+		// really is accelerated here
+		if (!"false".equals(System.getProperty("spaceinvaders.volatilesprites"))) {
+			VolatileImage test = gc.createCompatibleVolatileImage(16,16,Transparency.BITMASK);
+			videoMemorySprites = test.getCapabilities().isAccelerated();
+			test.flush();
+		}
+	}
+
+	/**
+	 * Try to create a buffer strategy
+	 *
+	 * @param count The number of buffers
+	 * @param capabilities The capabilities wanted
+	 * @param name The description of the strategy
+	 * @return True if the strategy was created
+	 */
+	private boolean create(int count,BufferCapabilities capabilities,String name) {
+		try {
+			canvas.createBufferStrategy(count,capabilities);
+		} catch (AWTException e) {
+			return false;
+		}
+		strategy = canvas.getBufferStrategy();
+		buffers = count;
+		chosen = name;
+		return true;
+	}
+
+	/**
+	 * Get the buffer strategy chosen
+	 *
+	 * @return The buffer strategy to draw with
+	 */
+	public BufferStrategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Check if the sprites should be kept in video memory
+	 *
+	 * @return True if the screen accelerates a VolatileImage
+	 */
+	public boolean isVideoMemorySprites() {
+		return videoMemorySprites;
+	}
+
+	/**
+	 * Measure the rate a sprite can be drawn into the back buffer. The 
+	 * back buffer is left full of sprites, so the next frame should 
+	 * clear the whole screen.
+	 *
+	 * @param sprite The sprite to draw
+	 * @return The number of sprites drawn each second
+	 */
+	public long measureBlitRate(Sprite sprite) {
+		int width = Math.max(1,canvas.getWidth() - sprite.getWidth());
+		int height = Math.max(1,canvas.getHeight() - sprite.getHeight());
+
+		Graphics g = strategy.getDrawGraphics();
+		long count = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			for (int i=0;i<1000;i++) {
+				// step across the screen in a pattern that doesn't
+				// repeat quickly, without the cost of random numbers
+				sprite.draw(g,(int) ((count * 7919) % width),(int) ((count * 104729) % height));
+				count++;
+			}
+			// wait for the drawing to really happen before timing it
+			Toolkit.getDefaultToolkit().sync();
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < BLIT_TEST_TIME);
+		g.dispose();
+
+		blitRate = (long) ((double) count * 1000000000L / elapsed);
+		return blitRate;
+	}
+
+	/**
+	 * Get a description of the rendering set up, as actually created
+	 *
+	 * @return The description
+	 */
+	public String getReport() {
+		GraphicsConfiguration gc = canvas.getGraphicsConfiguration();
+		BufferCapabilities caps = strategy.getCapabilities();
+		SpriteStore store = SpriteStore.get();
+		SpriteAtlas atlas = store.getAtlas();
+
+		StringBuilder report = new StringBuilder();
+		report.append("Rendering with ").append(chosen).append(" (").append(buffers).append(" buffers")
+			.append(caps.isPageFlipping() ? ", flipping "+caps.getFlipContents() : ", blitting")
+			.append(", back buffer ").append(caps.getBackBufferCapabilities().isAccelerated() ? "accelerated" : "not accelerated")
+			.append(")\n");
+		report.append("  Screen: ").append(gc.getDevice().getIDstring())
+			.append(", images ").append(gc.getImageCapabilities().isAccelerated() ? "accelerated" : "not accelerated")
+			.append(", page flipping ").append(gc.getBufferCapabilities().isPageFlipping() ? "available" : "unavailable")
+			.append(gc.getBufferCapabilities().isFullScreenRequired() ? " (full screen only)" : "")
+			.append("\n");
+		report.append("  Sprites: ");
+		if ((atlas != null) && atlas.isInVideoMemory()) {
+			report.append("atlas in video memory (VolatileImage)");
+		} else {
+			report.append(atlas != null ? "atlas in a managed image" : "managed images");
+		}
+		report.append(", ").append(store.countAccelerated(gc)).append("/").append(store.getLoadedCount()).append(" accelerated");
+		if (blitRate >= 0) {
+			report.append("\n  Blit rate: ").append(blitRate).append(" sprites/sec");
+		}
+		return report.toString();
+	}
+}
@@ -0,0 +1,102 @@
+package com.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import com.spaceinvader.timer.VirtualClock;
+
+/**
+ * Compares the fill rate of clearing the whole screen to the background
+ * every frame with clearing only the areas drawn over (@see DirtyRegions).
+ * A game played by an autopilot is drawn into an offscreen back buffer
+ * both ways, frame by frame, and the pixels cleared and time taken for
+ * each are reported. The two back buffers are compared at the end to 
+ * check dirty rendering draws exactly the same picture.
+ * <p>
+ * Runs headless, the back buffer is an ordinary image which keeps its
+ * contents between frames like a copied (blitted) back buffer.
+ * <p>
+ * The screen can be made any size, with the playfield scaled to fit it
+ * (@see Playfield), to measure drawing at other resolutions.
+ * <p>
+ * Usage: RenderBenchmark [frames, default 2000] [screen width] [screen height]
+ *
+ */
+public class RenderBenchmark {
+	/**
+	 * The entry point to the benchmark
+	 *
+	 * @param argv The arguments passed in, optionally the number of frames
+	 * and the size of the screen
+	 */
+	public static void main(String argv[]) {
+		int frames = argv.length > 0 ? Integer.parseInt(argv[0]) : 2000;
+		int width = argv.length > 2 ? Integer.parseInt(argv[1]) : Playfield.WIDTH;
+		int height = argv.length > 2 ? Integer.parseInt(argv[2]) : Playfield.HEIGHT;
+		Playfield playfield = new Playfield(width,height);
+		SpriteStore.get().setScale(playfield.getScale());
+
+		BackgroundLayer background = new BackgroundLayer(ImageCache.get().getImage("gameresources/background.jpg"),width,height);
+
+		VirtualClock clock = new VirtualClock();
+		Simulation simulation = new Simulation(Playfield.WIDTH,Playfield.HEIGHT,1,clock,Simulation.getSettingsFromProperties());
+		RenderSnapshot snapshot = new RenderSnapshot();
+		RenderSystem renderSystem = new RenderSystem();
+		renderSystem.setPlayfield(playfield);
+
+		BufferedImage fullBuffer = new BufferedImage(width,height,BufferedImage.TYPE_INT_RGB);
+		BufferedImage dirtyBuffer = new BufferedImage(width,height,BufferedImage.TYPE_INT_RGB);
+		Graphics2D full = fullBuffer.createGraphics();
+		Graphics2D dirtyGraphics = dirtyBuffer.createGraphics();
+		DirtyRegions dirty = new DirtyRegions(width,height);
+
+		// the first frame of dirty rendering has to clear everything
+		background.draw(dirtyGraphics);
+
+		long fullTime = 0;
+		long dirtyTime = 0;
+		long fullPixels = 0;
+		long dirtyPixels = 0;
+		for (int i=0;i<frames;i++) {
+			// start a game whenever one ends, then sweep back and forth 
+			// firing. The start goes in with the rest of the input, as 
+			// setInput() replaces every command
+			boolean left = (i / 250) % 2 == 0;
+			int input = (left ? Simulation.LEFT : Simulation.RIGHT) | Simulation.FIRE;
+			if (simulation.isWaitingForKeyPress()) {
+				input |= Simulation.START;
+			}
+			simulation.setInput(input);
+			simulation.update(8);
+			clock.advance(8000000);
+			snapshot.capture(simulation,clock.nanoTime());
+
+			long start = System.nanoTime();
+			background.draw(full);
+			renderSystem.draw(snapshot,full,1,null);
+			fullTime += System.nanoTime() - start;
+			fullPixels += (long) width * height;
+
+			start = System.nanoTime();
+			dirty.nextFrame();
+			dirtyPixels += dirty.clear(dirtyGraphics,background);
+			renderSystem.draw(snapshot,dirtyGraphics,1,dirty);
+			dirtyTime += System.nanoTime() - start;
+		}
+
+		int differences = 0;
+		for (int y=0;y<height;y++) {
+			for (int x=0;x<width;x++) {
+				if (fullBuffer.getRGB(x,y) != dirtyBuffer.getRGB(x,y)) {
+					differences++;
+				}
+			}
+		}
+
+		System.out.println("Full redraw:  "+(fullPixels / frames / 1000)+"Kpx/frame cleared, "+
+				(fullTime / frames / 1000)+"us/frame");
+		System.out.println("Dirty redraw: "+(dirtyPixels / frames / 1000)+"Kpx/frame cleared, "+
+				(dirtyTime / frames / 1000)+"us/frame");
+		System.out.println("Pixels differing between the two: "+differences);
+	}
+}
@@ -0,0 +1,113 @@
+package com.spaceinvaders;
+
+/**
+ * A copy of everything needed to draw one update of the game: where each
+ * entity and shot was at the last two updates, which sprite it shows, and
+ * the values shown on the HUD. The simulation thread fills in a snapshot
+ * after each update and hands it over to the render thread, which can
+ * then take as long as it likes drawing without holding up the game or
+ * seeing it change half way through a frame.
+ * <p>
+ * Snapshots are reused rather than created for every update, the arrays
+ * only grow when the game has more to draw than ever before.
+ *
+ */
+public class RenderSnapshot {
+	/** The time the update this snapshot captures was due (ns) */
+	long time;
+	/** The number of entities captured */
+	int entityCount;
+	/** The x location of each entity at the update before */
+	float[] prevX = new float[64];
+	/** The y location of each entity at the update before */
+	float[] prevY = new float[64];
+	/** The x location of each entity */
+	float[] x = new float[64];
+	/** The y location of each entity */
+	float[] y = new float[64];
+	/** The sprite id displayed for each entity */
+	int[] sprite = new int[64];
+
+	/** The number of shots captured */
+	int shotCount;
+	/** The sprite id displayed for every shot */
+	int shotSprite;
+	/** The x location of each shot at the update before */
+	float[] shotPrevX = new float[64];
+	/** The y location of each shot at the update before */
+	float[] shotPrevY = new float[64];
+	/** The x location of each shot */
+	float[] shotX = new float[64];
+	/** The y location of each shot */
+	float[] shotY = new float[64];
+
+	/** The current level of difficulty */
+	int level;
+	/** The total score of the player */
+	int score;
+	/** True if play is held up waiting for the player to start */
+	boolean waitingForKeyPress;
+	/** The message to display while waiting for the player */
+	String message;
+
+	/**
+	 * Capture the state of a simulation
+	 *
+	 * @param simulation The simulation to capture
+	 * @param time The time the update being captured was due (ns)
+	 */
+	public void capture(Simulation simulation,long time) {
+		this.time = time;
+
+		EntityWorld world = simulation.getWorld();
+		entityCount = world.count;
+		if (entityCount > x.length) {
+			int size = Math.max(entityCount,x.length*2);
+			prevX = new float[size];
+			prevY = new float[size];
+			x = new float[size];
+			y = new float[size];
+			sprite = new int[size];
+		}
+		for (int i=0;i<entityCount;i++) {
+			prevX[i] = (float) world.prevX[i];
+			prevY[i] = (float) world.prevY[i];
+			x[i] = (float) world.x[i];
+			y[i] = (float) world.y[i];
+		}
+		System.arraycopy(world.sprite,0,sprite,0,entityCount);
+
+		ProjectileManager projectiles = simulation.getProjectiles();
+		shotCount = projectiles.liveCount;
+		shotSprite = projectiles.getSpriteId();
+		if (shotCount > shotX.length) {
+			int size = Math.max(shotCount,shotX.length*2);
+			shotPrevX = new float[size];
+			shotPrevY = new float[size];
+			shotX = new float[size];
+			shotY = new float[size];
+		}
+		int[] live = projectiles.live;
+		for (int i=0;i<shotCount;i++) {
+			int b = live[i];
+			shotPrevX[i] = (float) projectiles.prevX[b];
+			shotPrevY[i] = (float) projectiles.prevY[b];
+			shotX[i] = (float) projectiles.x[b];
+			shotY[i] = (float) projectiles.y[b];
+		}
+
+		level = simulation.getLevel();
+		score = simulation.getScore();
+		waitingForKeyPress = simulation.isWaitingForKeyPress();
+		message = simulation.getMessage();
+	}
+
+	/**
+	 * Get the time the update this snapshot captures was due
+	 *
+	 * @return The time of the update (ns)
+	 */
+	public long getTime() {
+		return time;
+	}
+}
@@ -0,0 +1,135 @@
+package com.spaceinvaders;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.util.Arrays;
+
+/**
+ * The system responsible for drawing every entity and shot captured
+ * in a render snapshot. Everything is drawn between where it was at the
+ * last two updates so movement looks smooth however the drawing lines
+ * up with the updates.
+ * <p>
+ * Once the sprites have been packed into an atlas (@see SpriteAtlas),
+ * everything drawn from the atlas is drawn in one run and any sprites
+ * outside it afterwards, so the renderer isn't switching back and forth
+ * between images.
+ * <p>
+ * Locations are mapped from the playfield to the surface being drawn on
+ * (@see Playfield), the sprites having already been scaled to match.
+ *
+ */
+public class RenderSystem {
+	/** The entities whose sprites are outside the atlas, drawn after the rest */
+	private int[] stragglers = new int[64];
+	/** The mapping of the playfield onto the surface drawn on */
+	private Playfield playfield = new Playfield(Playfield.WIDTH,Playfield.HEIGHT);
+
+	/**
+	 * Set the mapping of the playfield onto the surface drawn on. The 
+	 * sprite store should be scaled to match (@see SpriteStore#setScale)
+	 *
+	 * @param playfield The mapping of the playfield onto the surface
+	 */
+	public void setPlayfield(Playfield playfield) {
+		this.playfield = playfield;
+	}
+
+	/**
+	 * Draw every entity and then every shot in a snapshot
+	 *
+	 * @param snapshot The snapshot of the game to draw
+	 * @param g The graphics context on which to draw
+	 * @param alpha How far between the last two updates to draw each
+	 * entity, from 0 (the previous update) to 1 (the latest)
+	 * @param dirty The regions to mark everything drawn in, or null to
+	 * not mark them
+	 */
+	public void draw(RenderSnapshot snapshot,Graphics g,double alpha,DirtyRegions dirty) {
+		SpriteStore store = SpriteStore.get();
+		SpriteAtlas atlas = store.getAtlas();
+		if (atlas != null) {
+			// bring the atlas back if it's been lost from video memory
+			atlas.validate();
+		}
+		Image batch = atlas == null ? null : atlas.getImage();
+		int[] sprite = snapshot.sprite;
+
+		// draw everything in the atlas first, keeping track of anything
+		// that isn't to draw afterwards
+		if (stragglers.length < snapshot.entityCount) {
+			stragglers = Arrays.copyOf(stragglers,Math.max(snapshot.entityCount,stragglers.length*2));
+		}
+		int stragglerCount = 0;
+		for (int i=0;i<snapshot.entityCount;i++) {
+			Sprite s = store.getSprite(sprite[i]);
+			if ((batch != null) && (s.getImage() != batch)) {
+				stragglers[stragglerCount++] = i;
+				continue;
+			}
+			drawEntity(snapshot,i,s,g,alpha,dirty);
+		}
+
+		Sprite shot = store.getSprite(snapshot.shotSprite);
+		boolean shotBatched = (batch == null) || (shot.getImage() == batch);
+		if (shotBatched) {
+			drawShots(snapshot,shot,g,alpha,dirty);
+		}
+
+		for (int i=0;i<stragglerCount;i++) {
+			int entity = stragglers[i];
+			drawEntity(snapshot,entity,store.getSprite(sprite[entity]),g,alpha,dirty);
+		}
+		if (!shotBatched) {
+			drawShots(snapshot,shot,g,alpha,dirty);
+		}
+	}
+
+	/**
+	 * Draw a single entity
+	 *
+	 * @param snapshot The snapshot of the game being drawn
+	 * @param i The index of the entity in the snapshot
+	 * @param s The sprite of the entity
+	 * @param g The graphics context on which to draw
+	 * @param alpha How far between the last two updates to draw
+	 * @param dirty The regions to mark the entity in, or null to not mark it
+	 */
+	private void drawEntity(RenderSnapshot snapshot,int i,Sprite s,Graphics g,double alpha,DirtyRegions dirty) {
+		float[] prevX = snapshot.prevX;
+		float[] prevY = snapshot.prevY;
+		int drawX = playfield.toSurfaceX(prevX[i] + ((snapshot.x[i] - prevX[i]) * alpha));
+		int drawY = playfield.toSurfaceY(prevY[i] + ((snapshot.y[i] - prevY[i]) * alpha));
+		s.draw(g,drawX,drawY);
+		if (dirty != null) {
+			dirty.add(drawX,drawY,s.getWidth(),s.getHeight());
+		}
+	}
+
+	/**
+	 * Draw every shot
+	 *
+	 * @param snapshot The snapshot of the game being drawn
+	 * @param shot The sprite shared by every shot
+	 * @param g The graphics context on which to draw
+	 * @param alpha How far between the last two updates to draw
+	 * @param dirty The regions to mark the shots in, or null to not mark them
+	 */
+	private void drawShots(RenderSnapshot snapshot,Sprite shot,Graphics g,double alpha,DirtyRegions dirty) {
+		float[] x = snapshot.shotX;
+		float[] y = snapshot.shotY;
+		float[] prevX = snapshot.shotPrevX;
+		float[] prevY = snapshot.shotPrevY;
+
+		int shotWidth = shot.getWidth();
+		int shotHeight = shot.getHeight();
+		for (int i=0;i<snapshot.shotCount;i++) {
+			int drawX = playfield.toSurfaceX(prevX[i] + ((x[i] - prevX[i]) * alpha));
+			int drawY = playfield.toSurfaceY(prevY[i] + ((y[i] - prevY[i]) * alpha));
+			shot.draw(g,drawX,drawY);
+			if (dirty != null) {
+				dirty.add(drawX,drawY,shotWidth,shotHeight);
+			}
+		}
+	}
+}
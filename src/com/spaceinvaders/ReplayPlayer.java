@@ -0,0 +1,291 @@
+package com.spaceinvaders;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import com.spaceinvader.timer.VirtualClock;
+
+/**
+ * Plays back a game recorded by a ReplayRecorder. A fresh simulation is
+ * created with the recorded seed and settings on a virtual clock, and 
+ * each update is given the commands recorded for it. Nothing waits for 
+ * real time, so a replay runs as fast as the machine allows.
+ * <p>
+ * Seeking forward simply runs the updates in between. Seeking backward
+ * starts the simulation again from the beginning and runs forward from 
+ * there, since a simulation can't be run backwards.
+ *
+ */
+public class ReplayPlayer {
+	/** The seed the recorded simulation was created with */
+	private long seed;
+	/** The width of the play area */
+	private int width;
+	/** The height of the play area */
+	private int height;
+	/** The length of each update (ms) */
+	private long updateInterval;
+	/** The setting flags the recording was made with */
+	private int settings;
+
+	/** The number of input changes recorded */
+	private int inputCount;
+	/** The update each input change happened at */
+	private long[] inputTicks = new long[64];
+	/** The input bits for each input change */
+	private int[] inputs = new int[64];
+	/** The number of level starts recorded */
+	private int levelCount;
+	/** The update each level started at */
+	private long[] levelTicks = new long[16];
+	/** The level started at each */
+	private int[] levels = new int[16];
+	/** The update the recording ended at, or -1 if it wasn't ended */
+	private long endTick = -1;
+	/** The checksum of the game state at the end of the recording */
+	private long endChecksum;
+
+	/** The simulation being played back */
+	private Simulation simulation;
+	/** The clock the simulation is timed by */
+	private VirtualClock clock;
+	/** The index of the next input change to apply */
+	private int nextInput;
+	/** The input being applied */
+	private int input;
+
+	/**
+	 * Create a new player for a recording held in a file
+	 *
+	 * @param file The name of the file holding the log
+	 * @throws IOException Indicates a failure to read the log
+	 */
+	public ReplayPlayer(String file) throws IOException {
+		this(new FileInputStream(file));
+	}
+
+	/**
+	 * Create a new player for a recording
+	 *
+	 * @param stream The stream to read the log from, closed once read
+	 * @throws IOException Indicates a failure to read the log
+	 */
+	public ReplayPlayer(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		try {
+			if (in.readInt() != ReplayRecorder.MAGIC) {
+				throw new IOException("Not a replay log");
+			}
+			int version = in.readUnsignedByte();
+			if (version != ReplayRecorder.VERSION) {
+				throw new IOException("Unsupported replay log version: "+version);
+			}
+			seed = in.readLong();
+			width = in.readInt();
+			height = in.readInt();
+			updateInterval = in.readInt();
+			settings = in.readUnsignedByte();
+
+			readEvents(in);
+		} finally {
+			in.close();
+		}
+
+		rewind();
+	}
+
+	/**
+	 * Read the event records up to the end of the log. A log that was cut
+	 * short (the game was killed) can still be played up to its last
+	 * event.
+	 *
+	 * @param in The stream to read from
+	 * @throws IOException Indicates a failure to read the log
+	 */
+	private void readEvents(DataInputStream in) throws IOException {
+		long tick = 0;
+
+		try {
+			while (true) {
+				tick += read(in);
+				int kind = in.readUnsignedByte();
+
+				if (kind == ReplayRecorder.INPUT) {
+					if (inputCount == inputs.length) {
+						inputTicks = Arrays.copyOf(inputTicks,inputCount*2);
+						inputs = Arrays.copyOf(inputs,inputCount*2);
+					}
+					inputTicks[inputCount] = tick;
+					inputs[inputCount++] = (int) read(in);
+				} else if (kind == ReplayRecorder.LEVEL) {
+					if (levelCount == levels.length) {
+						levelTicks = Arrays.copyOf(levelTicks,levelCount*2);
+						levels = Arrays.copyOf(levels,levelCount*2);
+					}
+					levelTicks[levelCount] = tick;
+					levels[levelCount++] = (int) read(in);
+				} else if (kind == ReplayRecorder.END) {
+					endChecksum = in.readLong();
+					endTick = tick;
+					return;
+				} else {
+					throw new IOException("Unknown replay event: "+kind);
+				}
+			}
+		} catch (EOFException e) {
+			// cut short, play what there is
+		}
+	}
+
+	/**
+	 * Read a variable length int written by the recorder
+	 *
+	 * @param in The stream to read from
+	 * @return The value read
+	 * @throws IOException Indicates a failure to read the log
+	 */
+	private long read(DataInputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	/**
+	 * Start the playback again from the beginning
+	 */
+	public void rewind() {
+		clock = new VirtualClock();
+		simulation = new Simulation(width,height,seed,clock,settings);
+		nextInput = 0;
+		input = 0;
+	}
+
+	/**
+	 * Play a single update
+	 */
+	public void step() {
+		long tick = simulation.getTick();
+		while ((nextInput < inputCount) && (inputTicks[nextInput] <= tick)) {
+			input = inputs[nextInput++];
+		}
+
+		simulation.setInput(input);
+		simulation.update(updateInterval);
+		clock.advance(updateInterval * 1000000);
+	}
+
+	/**
+	 * Move the playback to a given update, running forward to it or
+	 * starting again and running forward if it's already passed
+	 *
+	 * @param tick The update to move to
+	 */
+	public void seek(long tick) {
+		if (tick < simulation.getTick()) {
+			rewind();
+		}
+		while (simulation.getTick() < tick) {
+			step();
+		}
+	}
+
+	/**
+	 * Move the playback to the start of a level
+	 *
+	 * @param level The level to move to
+	 * @param occurrence Which time the level was reached (0 for the first),
+	 * since the level is reset each time the player dies
+	 * @return True if the level was found, false if the recording never
+	 * reached it
+	 */
+	public boolean seekToLevel(int level,int occurrence) {
+		for (int i=0;i<levelCount;i++) {
+			if ((levels[i] == level) && (occurrence-- == 0)) {
+				seek(levelTicks[i]);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Play the rest of the recording
+	 */
+	public void playToEnd() {
+		long end = getLength();
+		while (simulation.getTick() < end) {
+			step();
+		}
+	}
+
+	/**
+	 * Get the number of updates in the recording
+	 *
+	 * @return The number of updates recorded
+	 */
+	public long getLength() {
+		if (endTick >= 0) {
+			return endTick;
+		}
+		return inputCount == 0 ? 0 : inputTicks[inputCount-1] + 1;
+	}
+
+	/**
+	 * Check if the playback has reached the end of the recording in 
+	 * exactly the state it was recorded in
+	 *
+	 * @return True if the checksums match, false if the playback drifted
+	 * or the recording wasn't ended
+	 */
+	public boolean matchesRecording() {
+		return (endTick >= 0) && (simulation.getTick() == endTick) && 
+				(simulation.getChecksum() == endChecksum);
+	}
+
+	/**
+	 * Get the simulation being played back
+	 *
+	 * @return The simulation being played back
+	 */
+	public Simulation getSimulation() {
+		return simulation;
+	}
+
+	/**
+	 * Replay a recording at full speed and check it plays out exactly
+	 * as recorded
+	 *
+	 * @param argv The name of the log to replay
+	 * @throws IOException Indicates a failure to read the log
+	 */
+	public static void main(String argv[]) throws IOException {
+		if (argv.length < 1) {
+			System.err.println("Usage: ReplayPlayer <replay log>");
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		ReplayPlayer player = new ReplayPlayer(argv[0]);
+		player.playToEnd();
+		double elapsed = (System.nanoTime() - start) / 1000000000.0;
+
+		Simulation simulation = player.getSimulation();
+		System.out.println("Replayed "+simulation.getTick()+" ticks ("+
+				(simulation.getTick() * player.updateInterval / 1000)+"s of play, "+
+				player.levelCount+" levels started) in "+elapsed+"s, score "+simulation.getScore());
+		System.out.println(player.matchesRecording() ? "Replay matches the recording" :
+				"Replay DIFFERS from the recording");
+	}
+}
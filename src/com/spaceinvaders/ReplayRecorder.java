@@ -0,0 +1,168 @@
+package com.spaceinvaders;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records a game as it's played so it can be replayed exactly
+ * (@see ReplayPlayer). Since a simulation plays out the same way for the
+ * same seed and commands, all that needs to be kept is the seed, the
+ * settings the game was started with, and the updates at which the
+ * commands changed. A whole session comes to a few kilobytes.
+ * <p>
+ * The log is laid out as:
+ * <p>
+ * - A header: MAGIC, VERSION, the seed, the size of the play area, the
+ *   length of each update (ms) and the setting flags
+ * - Then one record per event: the number of updates since the last
+ *   event (a variable length int), the kind of event and its value
+ * - An END record holding the checksum of the final game state, so a 
+ *   replay can tell if it has played out any differently
+ * <p>
+ * Recording happens on the simulation thread, but finish() may be called
+ * from elsewhere (a shutdown hook for instance), so the methods are
+ * synchronized.
+ *
+ */
+public class ReplayRecorder implements SimulationListener {
+	/** The value the log starts with */
+	static final int MAGIC = 0x53495250;
+	/** The version of the log layout */
+	static final int VERSION = 1;
+	/** The event kind for a change in input, the value is the input bits */
+	static final int INPUT = 0;
+	/** The event kind for a new level, the value is the level */
+	static final int LEVEL = 1;
+	/** The event kind ending the log, the value is the final checksum */
+	static final int END = 2;
+
+	/** The stream the log is written to */
+	private DataOutputStream out;
+	/** The update the last event was recorded at */
+	private long lastTick;
+	/** True once the log has been ended */
+	private boolean finished;
+
+	/**
+	 * Create a new recorder writing to a file
+	 *
+	 * @param file The name of the file to write the log to
+	 * @param seed The seed the simulation was created with
+	 * @param width The width of the play area
+	 * @param height The height of the play area
+	 * @param updateInterval The length of each update (ms)
+	 * @param settings The setting flags the simulation was created with
+	 * @throws IOException Indicates a failure to write the header
+	 */
+	public ReplayRecorder(String file,long seed,int width,int height,long updateInterval,int settings) throws IOException {
+		this(new FileOutputStream(file),seed,width,height,updateInterval,settings);
+	}
+
+	/**
+	 * Create a new recorder
+	 *
+	 * @param stream The stream to write the log to
+	 * @param seed The seed the simulation was created with
+	 * @param width The width of the play area
+	 * @param height The height of the play area
+	 * @param updateInterval The length of each update (ms)
+	 * @param settings The setting flags the simulation was created with
+	 * @throws IOException Indicates a failure to write the header
+	 */
+	public ReplayRecorder(OutputStream stream,long seed,int width,int height,long updateInterval,int settings) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(stream));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(seed);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt((int) updateInterval);
+		out.writeByte(settings);
+	}
+
+	/**
+	 * @see com.spaceinvaders.SimulationListener#inputChanged(long, int)
+	 */
+	public synchronized void inputChanged(long tick,int input) {
+		if (writeEvent(tick,INPUT)) {
+			write(input);
+		}
+	}
+
+	/**
+	 * @see com.spaceinvaders.SimulationListener#levelStarted(long, int)
+	 */
+	public synchronized void levelStarted(long tick,int level) {
+		if (writeEvent(tick,LEVEL)) {
+			write(level);
+		}
+	}
+
+	/**
+	 * End the log with the final state of the game and close it. Any
+	 * events after this are ignored.
+	 *
+	 * @param simulation The simulation being recorded
+	 * @throws IOException Indicates a failure to write the log
+	 */
+	public synchronized void finish(Simulation simulation) throws IOException {
+		if (finished) {
+			return;
+		}
+		if (writeEvent(simulation.getTick(),END)) {
+			out.writeLong(simulation.getChecksum());
+		}
+		finished = true;
+		out.close();
+	}
+
+	/**
+	 * Write the start of an event record
+	 *
+	 * @param tick The update the event happened at
+	 * @param kind The kind of event
+	 * @return True if the record was started, false if the log has been
+	 * finished
+	 */
+	private boolean writeEvent(long tick,int kind) {
+		if (finished) {
+			return false;
+		}
+		write(tick - lastTick);
+		writeByte(kind);
+		lastTick = tick;
+		return true;
+	}
+
+	/**
+	 * Write a value as a variable length int, seven bits to a byte with 
+	 * the top bit set on every byte but the last
+	 *
+	 * @param value The value to write, which must not be negative
+	 */
+	private void write(long value) {
+		while (value >= 0x80) {
+			writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		writeByte((int) value);
+	}
+
+	/**
+	 * Write a single byte. The recording can't stop the game, so a 
+	 * failure to write is reported and the log ended.
+	 *
+	 * @param value The byte to write
+	 */
+	private void writeByte(int value) {
+		try {
+			out.writeByte(value);
+		} catch (IOException e) {
+			System.err.println("Unable to write replay log: "+e);
+			finished = true;
+		}
+	}
+}
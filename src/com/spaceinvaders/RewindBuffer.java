@@ -0,0 +1,413 @@
+package com.spaceinvaders;
+
+import java.util.Arrays;
+
+import com.spaceinvader.timer.VirtualClock;
+
+/**
+ * A history of the last few seconds of a game, so it can be stepped
+ * backwards. The state of the simulation is recorded after every update
+ * and held in a fixed size ring of bytes, so the history never takes
+ * more than the memory it was given however busy the game gets; when
+ * it's full the oldest states are dropped to make room.
+ * <p>
+ * To keep the states small, most are stored as the difference from the
+ * state recorded before. Every few updates a keyframe is stored whole
+ * instead, so a state can be rebuilt by starting at the keyframe before
+ * it and applying the differences from there. Each value is XORed with
+ * the same value in the state before, so everything that didn't change
+ * comes out as zero and is stored as the length of a run of zeros. The
+ * values that did change are stored as variable length ints, so small
+ * changes (counters and timers) take a byte or two.
+ * <p>
+ * States are only ever dropped a keyframe and the differences after it
+ * at a time, so the oldest state held is always a keyframe.
+ *
+ */
+public class RewindBuffer {
+	/** The bytes the states are stored in, used as a ring */
+	private byte[] data;
+	/** The most states held */
+	private int maxRecords;
+	/** The number of updates between keyframes */
+	private int keyframeInterval;
+
+	/** The offset of each state in the ring of bytes */
+	private int[] recordStart;
+	/** The number of bytes taken by each state */
+	private int[] recordLength;
+	/** True for each state stored whole */
+	private boolean[] keyframe;
+	/** The number of values in each state */
+	private int[] stateLength;
+	/** The message shown by the simulation at each state */
+	private String[] messages;
+	/** The index of the oldest state held */
+	private int first;
+	/** The number of states held */
+	private int count;
+	/** The number of states held after the newest keyframe */
+	private int sinceKeyframe;
+	/** The offset the next state will be written at */
+	private int head;
+	/** The number of bytes in use */
+	private int used;
+
+	/** The newest state held, the one the next state is stored against */
+	private StateVector previous = new StateVector();
+	/** The state being recorded */
+	private StateVector current = new StateVector();
+	/** The state being recorded in its stored form */
+	private byte[] encoded = new byte[1024];
+	/** The position in the stored form being read or written */
+	private int cursor;
+
+	/**
+	 * Create a new rewind buffer
+	 *
+	 * @param maxRecords The most states (updates) to hold
+	 * @param maxBytes The most memory the states can take (bytes)
+	 * @param keyframeInterval The number of updates between keyframes
+	 */
+	public RewindBuffer(int maxRecords,int maxBytes,int keyframeInterval) {
+		this.maxRecords = maxRecords;
+		this.keyframeInterval = keyframeInterval;
+
+		data = new byte[maxBytes];
+		recordStart = new int[maxRecords];
+		recordLength = new int[maxRecords];
+		keyframe = new boolean[maxRecords];
+		stateLength = new int[maxRecords];
+		messages = new String[maxRecords];
+	}
+
+	/**
+	 * Record the state of a simulation after an update
+	 *
+	 * @param simulation The simulation to record
+	 */
+	public void record(Simulation simulation) {
+		current.clear();
+		simulation.saveState(current);
+
+		boolean key = (count == 0) || (sinceKeyframe + 1 >= keyframeInterval);
+		int size = encode(key);
+
+		// make room a keyframe and its differences at a time. If that
+		// would drop the keyframe this state is stored against then 
+		// there's only room for one run, so start a new one
+		while ((count > 0) && ((count == maxRecords) || (used + size > data.length))) {
+			if (!key && (count == sinceKeyframe + 1)) {
+				count = 0;
+				used = 0;
+				key = true;
+				size = encode(true);
+			} else {
+				dropOldest();
+			}
+		}
+		if (size > data.length) {
+			// too big to ever fit, the history is lost
+			count = 0;
+			used = 0;
+			return;
+		}
+
+		int index = (first + count) % maxRecords;
+		recordStart[index] = head;
+		recordLength[index] = size;
+		keyframe[index] = key;
+		stateLength[index] = current.length;
+		messages[index] = current.message;
+		for (int i=0;i<size;i++) {
+			data[head] = encoded[i];
+			head = head + 1 == data.length ? 0 : head + 1;
+		}
+		used += size;
+		count++;
+		sinceKeyframe = key ? 0 : sinceKeyframe + 1;
+
+		StateVector temp = previous;
+		previous = current;
+		current = temp;
+	}
+
+	/**
+	 * Step the simulation back by one update, dropping the newest state
+	 *
+	 * @param simulation The simulation to step back
+	 * @return True if the simulation was stepped back, false if there's
+	 * no history left
+	 */
+	public boolean stepBack(Simulation simulation) {
+		return rewind(simulation,1);
+	}
+
+	/**
+	 * Move the simulation back a number of updates, dropping the states 
+	 * recorded since
+	 *
+	 * @param simulation The simulation to move back
+	 * @param updates The number of updates to go back
+	 * @return True if the simulation was moved back, false if there 
+	 * isn't that much history
+	 */
+	public boolean rewind(Simulation simulation,int updates) {
+		if ((updates <= 0) || (updates >= count)) {
+			return false;
+		}
+
+		int dropped = (first + count - 1) % maxRecords;
+		count -= updates;
+		int newest = (first + count - 1) % maxRecords;
+		head = (recordStart[newest] + recordLength[newest]) % data.length;
+		used = 0;
+		for (int i=0;i<count;i++) {
+			used += recordLength[(first + i) % maxRecords];
+		}
+
+		sinceKeyframe = 0;
+		while (!keyframe[(newest - sinceKeyframe + maxRecords) % maxRecords]) {
+			sinceKeyframe++;
+		}
+
+		// previous holds the state being dropped. Applying a difference
+		// again takes it back off, since XOR undoes itself, but only as
+		// far as the values the newer state had. So if no keyframe is 
+		// dropped and no state dropped is shorter than the one before it
+		// (a shot or entity went) the differences are taken off in turn.
+		// Otherwise start from the keyframe the newest state is stored 
+		// against and apply the differences from there
+		boolean undo = true;
+		for (int i=0;i<updates;i++) {
+			int index = (dropped - i + maxRecords) % maxRecords;
+			int before = (index - 1 + maxRecords) % maxRecords;
+			if (keyframe[index] || (stateLength[before] > stateLength[index])) {
+				undo = false;
+				break;
+			}
+		}
+		if (undo) {
+			for (int i=0;i<updates;i++) {
+				decode((dropped - i + maxRecords) % maxRecords);
+			}
+			previous.setLength(stateLength[newest]);
+		} else {
+			previous.clear();
+			for (int i=sinceKeyframe;i>=0;i--) {
+				decode((newest - i + maxRecords) % maxRecords);
+			}
+		}
+		previous.message = messages[newest];
+
+		simulation.restoreState(previous);
+		return true;
+	}
+
+	/**
+	 * Drop the oldest keyframe and the differences stored against it
+	 */
+	private void dropOldest() {
+		do {
+			used -= recordLength[first];
+			messages[first] = null;
+			first = (first + 1) % maxRecords;
+			count--;
+		} while ((count > 0) && !keyframe[first]);
+	}
+
+	/**
+	 * Encode the state being recorded into its stored form
+	 *
+	 * @param key True to store the state whole, false to store its 
+	 * difference from the state before
+	 * @return The number of bytes in the stored form
+	 */
+	private int encode(boolean key) {
+		long[] values = current.values;
+		int length = current.length;
+		long[] before = previous.values;
+		int beforeLength = key ? 0 : previous.length;
+
+		if (encoded.length < 10 + (length * 20)) {
+			encoded = new byte[10 + (length * 20)];
+		}
+		cursor = 0;
+		write(length);
+
+		int i = 0;
+		while (i < length) {
+			// count the values that haven't changed
+			int run = 0;
+			while ((i + run < length) && (values[i+run] == (i + run < beforeLength ? before[i+run] : 0))) {
+				run++;
+			}
+			write(run);
+			i += run;
+			if (i < length) {
+				write(values[i] ^ (i < beforeLength ? before[i] : 0));
+				i++;
+			}
+		}
+
+		return cursor;
+	}
+
+	/**
+	 * Apply a stored state on top of the state in previous
+	 *
+	 * @param index The index of the state to apply
+	 */
+	private void decode(int index) {
+		cursor = recordStart[index];
+		int length = (int) read();
+		previous.setLength(length);
+		long[] values = previous.values;
+
+		int i = 0;
+		while (i < length) {
+			i += (int) read();
+			if (i < length) {
+				values[i++] ^= read();
+			}
+		}
+	}
+
+	/**
+	 * Write a value to the stored form as a variable length int, seven
+	 * bits to a byte with the top bit set on every byte but the last
+	 *
+	 * @param value The value to write
+	 */
+	private void write(long value) {
+		while ((value & ~0x7fL) != 0) {
+			encoded[cursor++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		encoded[cursor++] = (byte) value;
+	}
+
+	/**
+	 * Read a variable length int from the ring of bytes
+	 *
+	 * @return The value read
+	 */
+	private long read() {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = data[cursor];
+			cursor = cursor + 1 == data.length ? 0 : cursor + 1;
+			value |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	/**
+	 * Get the number of updates held in the history
+	 *
+	 * @return The number of updates that can be stepped back
+	 */
+	public int getLength() {
+		return Math.max(0,count - 1);
+	}
+
+	/**
+	 * Get the memory taken by the history
+	 *
+	 * @return The number of bytes in use
+	 */
+	public int getBytesUsed() {
+		return used;
+	}
+
+	/**
+	 * Measure the size of the history and the cost of rewinding over a
+	 * headless game played by an autopilot
+	 *
+	 * @param argv The arguments passed in, optionally the number of 
+	 * seconds of history to hold
+	 */
+	public static void main(String argv[]) {
+		int seconds = argv.length > 0 ? Integer.parseInt(argv[0]) : 30;
+		int updatesPerSecond = 125;
+
+		VirtualClock clock = new VirtualClock();
+		Simulation simulation = new Simulation(Playfield.WIDTH,Playfield.HEIGHT,1,clock,Simulation.getSettingsFromProperties());
+		RewindBuffer rewind = new RewindBuffer(seconds * updatesPerSecond,4 << 20,updatesPerSecond);
+
+		// keep every state recorded, whole, to check those stepped back to
+		StateVector[] states = new StateVector[seconds * updatesPerSecond];
+		long recordTime = 0;
+		long updates = 0;
+		for (int i=0;i<seconds*updatesPerSecond*4;i++) {
+			// start a game whenever one ends, then sweep back and forth firing
+			boolean left = (i / 250) % 2 == 0;
+			int input = (left ? Simulation.LEFT : Simulation.RIGHT) | Simulation.FIRE;
+			if (simulation.isWaitingForKeyPress()) {
+				input |= Simulation.START;
+			}
+			simulation.setInput(input);
+			simulation.update(1000 / updatesPerSecond);
+			clock.advance(1000000000L / updatesPerSecond);
+
+			long start = System.nanoTime();
+			rewind.record(simulation);
+			recordTime += System.nanoTime() - start;
+			StateVector state = new StateVector();
+			simulation.saveState(state);
+			states[(int) (updates % states.length)] = state;
+			updates++;
+		}
+
+		System.out.println("History: "+rewind.getLength()+" updates in "+rewind.getBytesUsed()+" bytes ("+
+				(rewind.getBytesUsed() / Math.max(1,rewind.getLength()))+" bytes/update), "+
+				(recordTime / updates)+"ns to record");
+
+		// the bytes allocated while stepping back, where the JVM can count them
+		java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean threads = null;
+		if ((bean instanceof com.sun.management.ThreadMXBean) && 
+				((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+		}
+		long thread = Thread.currentThread().getId();
+
+		StateVector restored = new StateVector();
+		long elapsed = 0;
+		long allocated = 0;
+		int steps = 0;
+		int mismatches = 0;
+		while (true) {
+			long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			if (!rewind.stepBack(simulation)) {
+				break;
+			}
+			elapsed += System.nanoTime() - start;
+			if (threads != null) {
+				allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+			}
+			steps++;
+
+			// the whole state put back should be the one recorded
+			restored.clear();
+			simulation.saveState(restored);
+			StateVector expected = states[(int) ((updates - 1 - steps) % states.length)];
+			if ((restored.length != expected.length) ||
+				!Arrays.equals(restored.values,0,restored.length,expected.values,0,expected.length) ||
+				!String.valueOf(restored.message).equals(String.valueOf(expected.message))) {
+				mismatches++;
+			}
+		}
+		System.out.println("Stepped back "+steps+" updates, "+(elapsed / Math.max(1,steps))+"ns each, "+
+				(threads == null ? "unknown" : Long.toString(allocated / Math.max(1,steps)))+" bytes allocated each, "+
+				mismatches+" states differed from those recorded");
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+}
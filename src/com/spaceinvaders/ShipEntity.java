@@ -1,16 +1,10 @@
 package com.spaceinvaders;
 
-import java.awt.Dimension;
-import java.awt.Toolkit;
-
 /**
  * The entity that represents the players ship
  * 
  */
 public class ShipEntity extends Entity {
-	/** The game in which the ship exists */
-	private Game game;
-	
 	/**
 	 * Create a new entity to represent the players ship
 	 *  
@@ -19,42 +13,15 @@ public class ShipEntity extends Entity {
 	 * @param x The initial x location of the player's ship
 	 * @param y The initial y location of the player's ship
 	 */
-	public ShipEntity(Game game,String ref,int x,int y) {
-		super(ref,x,y);
-		this.game = game;
-	}
-	
-	/**
-	 * Request that the ship move itself based on an elapsed ammount of
-	 * time
-	 * 
-	 * @param delta The time that has elapsed since last move (ms)
-	 */
-	public void move(long delta) {
-		// if we're moving left and have reached the left hand side
-		// of the screen, don't move
-		if ((dx < 0) && (x < (screenSize.width/100*20))) {
-			return;
-		}
-		// if we're moving right and have reached the right hand side
-		// of the screen, don't move
-		if ((dx > 0) && (x > (screenSize.width/100*80))) {
-			return;
-		}
+	public ShipEntity(Simulation game,String ref,int x,int y) {
+		super(game.getWorld(),ref,EntityWorld.SHIP,x,y);
 		
-		super.move(delta);
-	}
-	
-	/**
-	 * Notification that the player's ship has collided with something
-	 * 
-	 * @param other The entity with which the ship has collided
-	 */
-	public void collidedWith(Entity other) {
-		// if its an alien, notify the game that the player
-		// is dead
-		if (other instanceof AlienEntity) {
-			game.notifyDeath();
-		}
+		// if we're moving and have reached either side of the 
+		// screen, don't move
+		setFlags(EntityWorld.STOP_AT_EDGES);
+		
+		// the ship can be hit by aliens and by their shots
+		setCollisionLayer(CollisionLayer.SHIP,
+				CollisionLayer.bit(CollisionLayer.ALIEN) | CollisionLayer.bit(CollisionLayer.ALIEN_SHOT));
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,964 @@
+package com.spaceinvaders;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.spaceinvader.timer.Clock;
+
+/**
+ * The rules of the game, with nothing to do with how it's displayed.
+ * The simulation owns the entity world and the systems that run it, and
+ * acts as the central mediator for game events (e.g. alien killed,
+ * player died). It takes input as commands (move left, move right, fire,
+ * start) and is moved on one step at a time by whoever is running it.
+ * Commands can be given from any thread, they're picked up at the start
+ * of the next update. The commands in effect for each update are the only
+ * thing from outside that affects the game (the clock is moved on by the
+ * same amount each update), so the same seed and commands always play
+ * out the same game. A listener can be told whenever the commands change
+ * so games can be recorded and replayed (@see ReplayRecorder).
+ * <p>
+ * Each simulation has its own random number generator and clock, so any
+ * number of them can run side by side without affecting each other.
+ * <p>
+ * Everything is placed in playfield units rather than screen pixels, on
+ * a playfield normally the size of the Playfield (@see Playfield), so the
+ * game plays out the same whatever size it's drawn at.
+ * <p>
+ * Nothing here needs a window or graphics device, so the game can be run
+ * headless just as well as behind the window (@see Game) that draws it
+ * and feeds it key presses.
+ *
+ */
+public class Simulation {
+	/** The input bit for moving the ship left */
+	public static final int LEFT = 1;
+	/** The input bit for moving the ship right */
+	public static final int RIGHT = 2;
+	/** The input bit for firing */
+	public static final int FIRE = 4;
+	/** The input bit for starting a new game */
+	public static final int START = 8;
+
+	/** The setting flag for bullet hell mode */
+	public static final int BULLET_HELL = 1;
+	/** The setting flag for bounding box only collisions */
+	public static final int BOX_COLLISIONS = 2;
+	/** The setting flag for the brute force broadphase */
+	public static final int BRUTE_BROADPHASE = 4;
+
+	/** The width of the play area */
+	private int width;
+	/** The height of the play area */
+	private int height;
+	/** The world holding the state of all the entities that exist in our game */
+	private EntityWorld world = new EntityWorld();
+	/** The system that moves the entities */
+	private MovementSystem movementSystem = new MovementSystem();
+	/** The system that animates the entities */
+	private AnimationSystem animationSystem = new AnimationSystem();
+	/** The system that finds and resolves collisions between entities */
+	private CollisionSystem collisionSystem;
+	/** The animation played by every alien */
+	private int alienAnimation;
+	/** The entity representing the player */
+	private Entity ship;
+	/** The speed at which the player's ship should move (pixels/sec) */
+	private double moveSpeed = 300;
+	/** The time at which last fired a shot */
+	private long lastFire = 0;
+	/** The interval between our players shot (ms) */
+	private long firingInterval = 500;
+	/** The number of aliens left on the screen */
+	private int alienCount;
+	/** the total score of the user */
+	private int totalScoreOfUser;
+	/** current level of difficulty */
+	private int currentLevel = 1;
+	/** The last time when an alien troop shot a bullet */
+	private long lastAlienBulletFire = 0;
+	/** The interval in which an alien troop should shoot a bullet */
+	private long alienFiringInterval = 2000;
+	/** The randomizer used to pick random number of aliens and random aliens to shoot the ship */
+	private Random randomizer;
+	/** The clock the firing intervals are timed by */
+	private Clock clock;
+	/** The number of times the player has died */
+	private int deaths;
+	/** The number of updates run so far */
+	private long tick;
+	/** The input used by the last update, built from the input bits */
+	private int lastInput;
+	/** The listener told about input changes and new levels, or null for none */
+	private SimulationListener listener;
+	/** The metrics each phase of an update is timed into, or null if updates aren't timed */
+	private FrameMetrics metrics;
+	/** The speed at which shots move (pixels/sec) */
+	private double shotSpeed = 300;
+	/** The formation the aliens and obstacles march in */
+	private AlienFormation formation = new AlienFormation(world);
+	/** The speed the alien formation starts each level at (pixels/sec) */
+	private double alienSpeed = 75;
+	/** The manager for every shot in flight */
+	private ProjectileManager projectiles;
+	/** The most shots that can be in flight at once, normally */
+	private int projectileCapacity = 256;
+	/** The most shots that can be in flight at once in bullet hell mode */
+	private int bulletHellCapacity = 8192;
+	/** True if we're playing in bullet hell mode, with the aliens firing constantly */
+	private boolean bulletHell;
+	/** The entities not in the world kept for reuse when a state is put back, by type */
+	private Entity[][] spares = new Entity[3][16];
+	/** The number of spare entities of each type */
+	private int[] spareCount = new int[3];
+	/** The number of entities of each type short when putting back a state */
+	private int[] shortfall = new int[3];
+	/** The setting flags the simulation was created with */
+	private int settings;
+	/** The number of alien shots per second in bullet hell mode */
+	private double bulletHellRate = 3000;
+	/** The alien shots owed in bullet hell mode, carried between loops */
+	private double bulletHellBacklog;
+
+	/** The message to display which waiting for a key press */
+	private String message = "";
+	/** True if we're holding up game play until a key has been pressed */
+	private volatile boolean waitingForKeyPress = true;
+	/** True if the player has asked for a new game to start at the next update, taken and cleared in one go by the update */
+	private AtomicBoolean startRequested = new AtomicBoolean();
+	/** True if the player is asking to move left */
+	private volatile boolean leftPressed = false;
+	/** True if the player is asking to move right */
+	private volatile boolean rightPressed = false;
+	/** True if the player is asking to fire */
+	private volatile boolean firePressed = false;
+	/** True if game logic needs to be applied this loop, normally as a result of a game event */
+	private boolean logicRequiredThisLoop = false;
+	/** The check used to decide if two entities really collided */
+	private Narrowphase narrowphase = new Narrowphase();
+	/** The dispatcher that resolves each candidate pair found by the broadphase */
+	private CollisionDispatcher collisionDispatcher = new CollisionDispatcher(narrowphase);
+
+	/**
+	 * Create a new simulation, ready and waiting for the first game
+	 * to be started. The simulation is timed by the system timer's
+	 * clock, with a randomly chosen seed.
+	 *
+	 * @param width The width of the play area
+	 * @param height The height of the play area
+	 */
+	public Simulation(int width,int height) {
+		this(width,height,new Random().nextLong(),SystemTimer.getClock());
+	}
+
+	/**
+	 * Create a new simulation with the default settings, ready and 
+	 * waiting for the first game to be started
+	 *
+	 * @param width The width of the play area
+	 * @param height The height of the play area
+	 * @param seed The seed for the random choices made by the game
+	 * @param clock The clock the simulation is timed by
+	 */
+	public Simulation(int width,int height,long seed,Clock clock) {
+		this(width,height,seed,clock,0);
+	}
+
+	/**
+	 * Create a new simulation, ready and waiting for the first game
+	 * to be started
+	 *
+	 * @param width The width of the play area
+	 * @param height The height of the play area
+	 * @param seed The seed for the random choices made by the game
+	 * @param clock The clock the simulation is timed by
+	 * @param settings The setting flags changing how the game plays
+	 * (BULLET_HELL, BOX_COLLISIONS and BRUTE_BROADPHASE)
+	 */
+	public Simulation(int width,int height,long seed,Clock clock,int settings) {
+		this.width = width;
+		this.height = height;
+		this.randomizer = new Random(seed);
+		this.clock = clock;
+		this.settings = settings;
+		bulletHell = (settings & BULLET_HELL) != 0;
+
+		// choose how we find colliding entities. The spatial hash is
+		// the default, the old brute force check can be selected to 
+		// compare the two
+		Broadphase broadphase;
+		if ((settings & BRUTE_BROADPHASE) != 0) {
+			broadphase = new BruteForceBroadphase();
+		} else {
+			broadphase = new SpatialHashBroadphase(64);
+		}
+		collisionSystem = new CollisionSystem(broadphase,collisionDispatcher);
+		initCollisionRules();
+
+		// check sprite pixels once bounds overlap unless we've been
+		// asked for the old bounding box only collisions
+		narrowphase.setPixelPerfect((settings & BOX_COLLISIONS) == 0);
+
+		// shots are handled by a pool of their own, sized up for bullet
+		// hell mode where the aliens fire thousands of shots a second
+		projectiles = new ProjectileManager(bulletHell ? bulletHellCapacity : projectileCapacity,
+				"gameresources/shot.gif",new ProjectileListener() {
+			public void projectileHit(int side, Entity target) {
+				shotHit(target);
+			}
+		});
+		projectiles.setBounds(width,height);
+
+		// the ship stops, and the formation turns, at the same edges of the screen
+		world.setEdges(width/100*20,width/100*80);
+		formation.setEdges(width/100*20,width/100*80);
+
+		// the aliens all share the same animation frames
+		SpriteShapes shapes = SpriteShapes.get();
+		int alien = shapes.getId("gameresources/alien.gif");
+		alienAnimation = world.defineAnimation(new int[] {
+				alien,
+				shapes.getId("gameresources/alien2.gif"),
+				alien,
+				shapes.getId("gameresources/alien3.gif")},250);
+
+		// initialise the entities in our game so there's something
+		// to see at startup
+		initEntities();
+	}
+
+	/**
+	 * Get the world holding the state of the entities in this game
+	 *
+	 * @return The entity world for this game
+	 */
+	public EntityWorld getWorld() {
+		return world;
+	}
+
+	/**
+	 * Get the manager for every shot in flight
+	 *
+	 * @return The projectile manager for this game
+	 */
+	public ProjectileManager getProjectiles() {
+		return projectiles;
+	}
+
+	/**
+	 * Get the dispatcher resolving collisions, which counts the pairs
+	 * it considers and skips
+	 *
+	 * @return The collision dispatcher for this game
+	 */
+	public CollisionDispatcher getCollisionDispatcher() {
+		return collisionDispatcher;
+	}
+
+	/**
+	 * Get the formation the aliens march in
+	 *
+	 * @return The alien formation for this game
+	 */
+	public AlienFormation getFormation() {
+		return formation;
+	}
+
+	/**
+	 * Get the animation played by the aliens
+	 *
+	 * @return The id of the alien animation in the world
+	 */
+	public int getAlienAnimation() {
+		return alienAnimation;
+	}
+
+	/**
+	 * Get the entity representing the player
+	 *
+	 * @return The player's ship
+	 */
+	public Entity getShip() {
+		return ship;
+	}
+
+	/**
+	 * Get the number of aliens left on the screen
+	 *
+	 * @return The number of aliens left
+	 */
+	public int getAlienCount() {
+		return alienCount;
+	}
+
+	/**
+	 * Get the number of times the player has died
+	 *
+	 * @return The number of deaths
+	 */
+	public int getDeaths() {
+		return deaths;
+	}
+
+	/**
+	 * Get a hash of the state of the game, used to check that a replay 
+	 * has played out exactly as the game it was recorded from. Every 
+	 * location is hashed bit for bit, so the smallest drift shows up.
+	 *
+	 * @return The hash of the game state
+	 */
+	public long getChecksum() {
+		long hash = totalScoreOfUser;
+		hash = (hash * 31) + currentLevel;
+		hash = (hash * 31) + deaths;
+		hash = (hash * 31) + Double.doubleToLongBits(formation.getX());
+		hash = (hash * 31) + Double.doubleToLongBits(formation.getY());
+		for (int i=0;i<world.count;i++) {
+			hash = (hash * 31) + world.getType(i);
+			hash = (hash * 31) + Double.doubleToLongBits(world.x[i]);
+			hash = (hash * 31) + Double.doubleToLongBits(world.y[i]);
+		}
+		for (int i=0;i<projectiles.liveCount;i++) {
+			int b = projectiles.live[i];
+			hash = (hash * 31) + Double.doubleToLongBits(projectiles.x[b]);
+			hash = (hash * 31) + Double.doubleToLongBits(projectiles.y[b]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Get the width of the play area
+	 *
+	 * @return The width of the play area
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the play area
+	 *
+	 * @return The height of the play area
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Get the current level of difficulty
+	 *
+	 * @return The current level
+	 */
+	public int getLevel() {
+		return currentLevel;
+	}
+
+	/**
+	 * Get the total score of the player
+	 *
+	 * @return The total score
+	 */
+	public int getScore() {
+		return totalScoreOfUser;
+	}
+
+	/**
+	 * Get the message to display while waiting for the game to start
+	 *
+	 * @return The message to display
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Check if play is held up waiting for the player to start a game
+	 *
+	 * @return True if we're waiting for the player to start
+	 */
+	public boolean isWaitingForKeyPress() {
+		return waitingForKeyPress;
+	}
+
+	/**
+	 * Command to start a new game at the next update, only acted on 
+	 * while we're waiting for the player
+	 */
+	public void start() {
+		startRequested.set(true);
+	}
+
+	/**
+	 * Set every command at once, replacing whatever was set before
+	 *
+	 * @param input The commands, built from the input bits
+	 */
+	public void setInput(int input) {
+		leftPressed = (input & LEFT) != 0;
+		rightPressed = (input & RIGHT) != 0;
+		firePressed = (input & FIRE) != 0;
+		startRequested.set((input & START) != 0);
+	}
+
+	/**
+	 * Set the listener told about input changes and new levels
+	 *
+	 * @param listener The listener to tell, or null for none
+	 */
+	public void setListener(SimulationListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Get the setting flags the simulation was created with
+	 *
+	 * @return The setting flags
+	 */
+	public int getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Read the setting flags from the system properties, for whatever 
+	 * launches the game to pass to the simulations it creates:
+	 * <p>
+	 * - -Dspaceinvaders.bullethell=true for BULLET_HELL
+	 * - -Dspaceinvaders.pixelcollisions=false for BOX_COLLISIONS
+	 * - -Dspaceinvaders.broadphase=brute for BRUTE_BROADPHASE
+	 *
+	 * @return The setting flags
+	 */
+	public static int getSettingsFromProperties() {
+		int settings = 0;
+		if ("true".equals(System.getProperty("spaceinvaders.bullethell"))) {
+			settings |= BULLET_HELL;
+		}
+		if ("false".equals(System.getProperty("spaceinvaders.pixelcollisions"))) {
+			settings |= BOX_COLLISIONS;
+		}
+		if ("brute".equals(System.getProperty("spaceinvaders.broadphase"))) {
+			settings |= BRUTE_BROADPHASE;
+		}
+		return settings;
+	}
+
+	/**
+	 * Time each phase of every update from now on (@see FrameMetrics)
+	 *
+	 * @param metrics The metrics to time updates into, or null to stop
+	 * timing them
+	 */
+	public void setMetrics(FrameMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Get the number of updates run so far
+	 *
+	 * @return The number of updates run
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Write the state of the game to a state vector, so it can be put 
+	 * back later (@see RewindBuffer). Members of the formation only keep
+	 * their place in it, since their location follows from that. Timers
+	 * are kept as the time since they last went off, so they carry on 
+	 * from the same point when put back even though the clock has moved
+	 * on. The random number generator isn't part of the state, a game 
+	 * put back plays on with fresh random choices.
+	 *
+	 * @param state The vector to write the state to
+	 */
+	void saveState(StateVector state) {
+		long now = getTime();
+		state.put(waitingForKeyPress ? 1 : 0);
+		state.put(logicRequiredThisLoop ? 1 : 0);
+		state.put(alienCount);
+		state.put(totalScoreOfUser);
+		state.put(currentLevel);
+		state.put(deaths);
+		state.put(now - lastFire);
+		state.put(now - lastAlienBulletFire);
+		state.putDouble(bulletHellBacklog);
+		state.putDouble(formation.getX());
+		state.putDouble(formation.getY());
+		state.putDouble(formation.getSpeed());
+		state.message = message;
+
+		state.put(world.count);
+		for (int i=0;i<world.count;i++) {
+			int f = world.flags[i];
+			boolean inFormation = (f & EntityWorld.IN_FORMATION) != 0;
+
+			state.put(world.type[i]);
+			state.put(f);
+			state.put(world.layer[i]);
+			state.put(world.mask[i]);
+			state.putDouble(inFormation ? 0 : world.x[i]);
+			state.putDouble(inFormation ? 0 : world.y[i]);
+			state.putDouble(world.dx[i]);
+			state.putDouble(world.dy[i]);
+			state.putDouble(world.offsetX[i]);
+			state.putDouble(world.offsetY[i]);
+			state.put(world.sprite[i]);
+			state.put(world.animation[i]);
+			state.put(world.frame[i]);
+			state.put(world.frameTime[i]);
+		}
+
+		state.put(projectiles.liveCount);
+		for (int i=0;i<projectiles.liveCount;i++) {
+			int b = projectiles.live[i];
+			state.putDouble(projectiles.x[b]);
+			state.putDouble(projectiles.y[b]);
+			state.putDouble(projectiles.dx[b]);
+			state.putDouble(projectiles.dy[b]);
+			state.put(projectiles.side[b]);
+		}
+	}
+
+	/**
+	 * Put back a state written by saveState(). Each slot is given back
+	 * an entity of the type it held, taken from the ones in the world
+	 * or kept spare from earlier, so stepping back over and over doesn't
+	 * create new entities. The world ends up as it was though the
+	 * handles of the entities will differ.
+	 *
+	 * @param state The vector to read the state from
+	 */
+	void restoreState(StateVector state) {
+		long now = getTime();
+		state.position = 0;
+		waitingForKeyPress = state.get() != 0;
+		logicRequiredThisLoop = state.get() != 0;
+		alienCount = state.getInt();
+		totalScoreOfUser = state.getInt();
+		currentLevel = state.getInt();
+		deaths = state.getInt();
+		lastFire = now - state.get();
+		lastAlienBulletFire = now - state.get();
+		bulletHellBacklog = state.getDouble();
+		double formationX = state.getDouble();
+		double formationY = state.getDouble();
+		double formationSpeed = state.getDouble();
+		message = state.message;
+
+		projectiles.clear();
+		formation.rebuild(0,0,0);
+		int count = state.getInt();
+		int start = state.position;
+
+		// only create entities when there aren't enough of a type 
+		// between the world and the spares. They're put aside with 
+		// the rest and given their slots below
+		for (int type=0;type<shortfall.length;type++) {
+			shortfall[type] = -spareCount[type];
+		}
+		for (int i=0;i<world.count;i++) {
+			shortfall[world.type[i]]--;
+		}
+		for (int i=0;i<count;i++) {
+			int type = state.getInt();
+			state.position += 13;
+			if (++shortfall[type] > 0) {
+				shortfall[type]--;
+				if (type == EntityWorld.SHIP) {
+					new ShipEntity(this,"gameresources/ship.gif",0,0);
+				} else if (type == EntityWorld.ALIEN) {
+					new AlienEntity(this,0,0);
+				} else {
+					new ObstacleEntity(this,0,0);
+				}
+			}
+		}
+		world.commit();
+		for (int i=0;i<world.count;i++) {
+			putSpare(world.type[i],world.getOwner(i));
+		}
+		world.reset(count);
+
+		state.position = start;
+		for (int i=0;i<count;i++) {
+			int type = state.getInt();
+			Entity entity = spares[type][--spareCount[type]];
+			spares[type][spareCount[type]] = null;
+			world.adopt(i,entity);
+			if (type == EntityWorld.SHIP) {
+				ship = entity;
+			}
+
+			int f = state.getInt();
+			world.type[i] = type;
+			world.flags[i] = f;
+			world.layer[i] = state.getInt();
+			world.mask[i] = state.getInt();
+			double x = state.getDouble();
+			double y = state.getDouble();
+			world.dx[i] = state.getDouble();
+			world.dy[i] = state.getDouble();
+			world.offsetX[i] = state.getDouble();
+			world.offsetY[i] = state.getDouble();
+			if ((f & EntityWorld.IN_FORMATION) != 0) {
+				x = formationX + world.offsetX[i];
+				y = formationY + world.offsetY[i];
+			}
+			world.x[i] = world.prevX[i] = x;
+			world.y[i] = world.prevY[i] = y;
+			world.setSprite(i,state.getInt());
+			world.animation[i] = state.getInt();
+			world.frame[i] = state.getInt();
+			world.frameTime[i] = state.get();
+		}
+		formation.rebuild(formationX,formationY,formationSpeed);
+
+		int shots = state.getInt();
+		for (int i=0;i<shots;i++) {
+			projectiles.fire(state.getDouble(),state.getDouble(),state.getDouble(),state.getDouble(),state.getInt());
+		}
+		projectiles.commit();
+	}
+
+	/**
+	 * Keep an entity that has left the world for reuse by restoreState()
+	 *
+	 * @param type The type tag of the entity
+	 * @param entity The entity to keep
+	 */
+	private void putSpare(int type,Entity entity) {
+		if (spareCount[type] == spares[type].length) {
+			spares[type] = Arrays.copyOf(spares[type],spareCount[type]*2);
+		}
+		spares[type][spareCount[type]++] = entity;
+	}
+
+	/**
+	 * Command the ship to move left, or stop moving left
+	 *
+	 * @param pressed True if the ship should move left
+	 */
+	public void setLeftPressed(boolean pressed) {
+		leftPressed = pressed;
+	}
+
+	/**
+	 * Command the ship to move right, or stop moving right
+	 *
+	 * @param pressed True if the ship should move right
+	 */
+	public void setRightPressed(boolean pressed) {
+		rightPressed = pressed;
+	}
+
+	/**
+	 * Command the ship to fire, or stop firing
+	 *
+	 * @param pressed True if the ship should fire
+	 */
+	public void setFirePressed(boolean pressed) {
+		firePressed = pressed;
+	}
+
+	/**
+	 * Start a fresh game, this should clear out any old data and
+	 * create a new set.
+	 */
+	private void startGame() {
+		// clear out any existing entities and intialise a new set
+		world.clear();
+		projectiles.clear();
+		initEntities();
+
+		// blank out any keyboard settings we might currently have
+		leftPressed = false;
+		rightPressed = false;
+		firePressed = false;
+
+		if (listener != null) {
+			listener.levelStarted(tick,currentLevel);
+		}
+	}
+
+	/**
+	 * Initialise the starting state of the entities (ship and aliens). Each
+	 * entitiy adds itself to the world as it's created.
+	 */
+	private void initEntities() {
+		// create the player ship and place it roughly in the center of the screen
+		ship = new ShipEntity(this,"gameresources/ship.gif",(width/100*50),650);
+
+		// create a block of aliens (5 rows, by 12 aliens, spaced evenly)
+		// marching in a formation anchored at the top left alien
+		formation.reset(width/100*30,50,-alienSpeed,50);
+		alienCount = 0;
+		for (int row=0;row<4;row++) {
+			for (int x=0;x<12;x++) {
+				new AlienEntity(this,(width/100*30)+(x*50),(50)+row*30);
+				alienCount++;
+			}
+		}
+		for (int x=0;x<12;x++) {
+			new ObstacleEntity(this,(width/100*30)+(x*50),(50)+4*30);
+		}
+
+	}
+
+	/**
+	 * Register what should happen when entities on each pair of
+	 * collision layers collide. Pairs of layers that aren't registered
+	 * here never interact.
+	 */
+	private void initCollisionRules() {
+		// the player dies if an alien touches the ship. Shots are
+		// checked by the projectile manager (@see shotHit())
+		collisionDispatcher.register(CollisionLayer.SHIP,CollisionLayer.ALIEN,new CollisionHandler() {
+			public void collided(Entity ship, Entity alien) {
+				notifyDeath();
+			}
+		});
+	}
+
+	/**
+	 * Notification from the projectile manager that a shot has hit
+	 * an entity. The projectile manager only lets each side's shots
+	 * hit the layers that side can hit.
+	 *
+	 * @param target The entity that was hit
+	 */
+	private void shotHit(Entity target) {
+		switch (world.getType(target.getSlot())) {
+		case EntityWorld.ALIEN:
+			// the player's shot kills the alien
+			removeEntity(target);
+			formation.memberRemoved(target.getSlot());
+			notifyAlienKilled();
+			break;
+		case EntityWorld.OBSTACLE:
+			removeEntity(target);
+			formation.memberRemoved(target.getSlot());
+			break;
+		case EntityWorld.SHIP:
+			notifyDeath();
+			break;
+		}
+	}
+
+	/**
+	 * Notification from a game entity that the logic of the game
+	 * should be run at the next opportunity (normally as a result of some
+	 * game event)
+	 */
+	public void updateLogic() {
+		logicRequiredThisLoop = true;
+	}
+
+	/**
+	 * Remove an entity from the game. The entity removed will
+	 * no longer move or be drawn.
+	 *
+	 * @param entity The entity that should be removed
+	 */
+	public void removeEntity(Entity entity) {
+		world.remove(entity.getSlot());
+	}
+
+	/**
+	 * Notification that the player has died.
+	 */
+	public void notifyDeath() {
+		if (!waitingForKeyPress) {
+			deaths++;
+		}
+		message = "Oh no! They got you!!.Try again?";
+		totalScoreOfUser = 0;
+		currentLevel = 1;
+		waitingForKeyPress = true;
+	}
+
+	/**
+	 * Notification that the player has won since all the aliens
+	 * are dead.
+	 */
+	public void notifyWin() {
+		message = "Well done! You finished level " + currentLevel + ".Your total score is " + totalScoreOfUser + ".";
+		currentLevel++;
+		waitingForKeyPress = true;
+	}
+
+	/**
+	 * Notification that an alien has been killed
+	 */
+	public void notifyAlienKilled() {
+		// reduce the alient count, if there are none left, the player has won!
+		alienCount--;
+		// increase the score as the user killed an alien
+		totalScoreOfUser += 10;
+
+		if (alienCount == 0) {
+			notifyWin();
+		}
+
+		// if there are still some aliens left then they all need to get faster, so
+		// speed up the formation they march in
+		formation.speedUp(1 + 0.01*currentLevel);
+	}
+
+	/**
+	 * Attempt to fire a shot from the player. Its called "try"
+	 * since we must first check that the player can fire at this
+	 * point, i.e. has he/she waited long enough between shots
+	 */
+	public void tryToFire() {
+		// check that we have waiting long enough to fire
+		if (getTime() - lastFire < firingInterval) {
+			return;
+		}
+
+		// if we waited long enough, create the shot entity, and record the time.
+		lastFire = getTime();
+		projectiles.fire(ship.getX()+10,ship.getY()-30,0,-shotSpeed,ProjectileManager.PLAYER);
+	}
+
+	/**
+	 * Get the time from the clock the simulation is timed by
+	 *
+	 * @return The time in milliseconds
+	 */
+	private long getTime() {
+		return clock.nanoTime() / 1000000;
+	}
+
+	/**
+	 * Move the game on by a single step
+	 *
+	 * @param delta The length of the step in milliseconds
+	 */
+	public void update(long delta) {
+		FrameMetrics metrics = this.metrics;
+		long phaseStart = metrics == null ? 0 : metrics.startUpdate();
+
+		// take the commands for this update in one go, so they can't 
+		// change part way through
+		int input = (leftPressed ? LEFT : 0) | (rightPressed ? RIGHT : 0) | 
+					(firePressed ? FIRE : 0) | (startRequested.getAndSet(false) ? START : 0);
+		if ((input != lastInput) && (listener != null)) {
+			listener.inputChanged(tick,input);
+		}
+		lastInput = input;
+
+		// start a new game if we've been asked to
+		if ((input & START) != 0) {
+			if (waitingForKeyPress) {
+				waitingForKeyPress = false;
+				startGame();
+			}
+		}
+
+		// resolve the movement of the ship. First assume the ship
+		// isn't moving. If either cursor key is pressed then
+		// update the movement appropraitely
+		ship.setHorizontalMovement(0);
+
+		if ((input & (LEFT | RIGHT)) == LEFT) {
+			ship.setHorizontalMovement(-moveSpeed);
+		} else if ((input & (LEFT | RIGHT)) == RIGHT) {
+			ship.setHorizontalMovement(moveSpeed);
+		}
+
+		// if we're pressing fire, attempt to fire
+		if ((input & FIRE) != 0) {
+			tryToFire();
+		}
+		if (metrics != null) {
+			phaseStart = metrics.lap(FrameMetrics.INPUT,phaseStart);
+		}
+
+		// run the systems that move and animate every entity. If the
+		// alien formation reaches the bottom of the screen the player
+		// dies
+		if (!waitingForKeyPress) {
+			if (movementSystem.move(world,formation,delta)) {
+				notifyDeath();
+			}
+			animationSystem.animate(world,delta);
+			projectiles.move(delta);
+		} else {
+			movementSystem.hold(world);
+			projectiles.hold();
+		}
+		if (metrics != null) {
+			phaseStart = metrics.lap(FrameMetrics.MOVE,phaseStart);
+		}
+
+		// find the pairs of entities that might be touching. The
+		// dispatcher skips pairs whose layers don't interact and
+		// hands real collisions to the right handler
+		collisionSystem.collide(world);
+		projectiles.collide(world,narrowphase);
+		if (metrics != null) {
+			phaseStart = metrics.lap(FrameMetrics.COLLISION,phaseStart);
+		}
+
+		// make random aliens fire missiles at the ship. Only the
+		// bottom alien in each column is free to shoot
+		if(getTime() - lastAlienBulletFire > alienFiringInterval){
+			for(int i=0; i< randomizer.nextInt(currentLevel*2 + 1); i++){
+				int index = formation.pickShooter(randomizer);
+				if(index >= 0){
+					Entity me = world.getOwner(index);
+					projectiles.fire(me.getX()+10,me.getY()+30,0,shotSpeed,ProjectileManager.ALIEN);
+				}
+			}
+			lastAlienBulletFire = getTime();
+		}
+
+		// in bullet hell mode the aliens also spray shots constantly,
+		// fanning out across the screen
+		if (bulletHell && !waitingForKeyPress) {
+			bulletHellBacklog += (delta * bulletHellRate) / 1000;
+			while (bulletHellBacklog >= 1) {
+				bulletHellBacklog--;
+				int index = formation.pickShooter(randomizer);
+				if (index >= 0) {
+					projectiles.fire(world.x[index]+15,world.y[index]+30,
+							(randomizer.nextDouble() - 0.5) * 2 * shotSpeed,
+							shotSpeed * (0.5 + randomizer.nextDouble()),ProjectileManager.ALIEN);
+				}
+			}
+		}
+		if (metrics != null) {
+			phaseStart = metrics.lap(FrameMetrics.ALIEN_FIRE,phaseStart);
+		}
+
+		// apply every spawn and removal asked for this step in one
+		// go, so nothing moves slot while the systems are running
+		world.commit();
+		projectiles.commit();
+		if (metrics != null) {
+			phaseStart = metrics.lap(FrameMetrics.REMOVAL,phaseStart);
+		}
+
+		// if a game event has indicated that game logic should
+		// be resolved, cycle round every entity requesting that
+		// their personal logic should be considered.
+		if (logicRequiredThisLoop) {
+			for (int i=0;i<world.size();i++) {
+				Entity entity = world.getOwner(i);
+				if (entity != null) {
+					entity.doLogic();
+				}
+			}
+
+			logicRequiredThisLoop = false;
+		}
+		if (metrics != null) {
+			metrics.lap(FrameMetrics.LOGIC,phaseStart);
+			metrics.endUpdate(world,projectiles,collisionDispatcher);
+		}
+
+		tick++;
+	}
+}
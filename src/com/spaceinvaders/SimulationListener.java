@@ -0,0 +1,24 @@
+package com.spaceinvaders;
+
+/**
+ * A listener told about the things that shape how a simulation plays
+ * out, used to record games so they can be replayed.
+ *
+ */
+public interface SimulationListener {
+	/**
+	 * Notification that the input used by the simulation has changed
+	 *
+	 * @param tick The update the new input is first used by
+	 * @param input The new input, built from the input bits (@see Simulation)
+	 */
+	public void inputChanged(long tick,int input);
+
+	/**
+	 * Notification that a new level has started
+	 *
+	 * @param tick The update the level started in
+	 * @param level The level started
+	 */
+	public void levelStarted(long tick,int level);
+}
@@ -0,0 +1,66 @@
+package com.spaceinvaders;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The handoff of render snapshots from the simulation thread to the
+ * render thread, without either thread ever waiting on the other.
+ * <p>
+ * Three snapshots take turns. The simulation fills in the back one and
+ * publishes it by swapping it with the one in the middle. The renderer
+ * draws the front one, and when a newer snapshot has been published it
+ * swaps its front one with the middle. Each swap is a single atomic
+ * exchange, and since each thread only ever touches the snapshot it
+ * holds, a slow frame never stops the simulation publishing and the
+ * renderer always draws the newest complete update.
+ *
+ */
+public class SnapshotExchange {
+	/** The bit set alongside the middle index when it holds a snapshot the renderer hasn't seen */
+	private static final int FRESH = 4;
+	/** The mask to pull the index out of the middle */
+	private static final int INDEX = 3;
+
+	/** The three snapshots */
+	private RenderSnapshot[] snapshots = new RenderSnapshot[] {
+			new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+	/** The snapshot being filled by the simulation thread */
+	private int back = 0;
+	/** The snapshot being drawn by the render thread */
+	private int front = 1;
+	/** The snapshot in between, and whether it's newer than the front */
+	private AtomicInteger middle = new AtomicInteger(2);
+
+	/**
+	 * Get the snapshot for the simulation thread to fill in. Only
+	 * called from the simulation thread.
+	 *
+	 * @return The snapshot to fill in
+	 */
+	public RenderSnapshot getBack() {
+		return snapshots[back];
+	}
+
+	/**
+	 * Publish the snapshot filled in by the simulation thread. Only
+	 * called from the simulation thread.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Get the newest snapshot published. Only called from the render
+	 * thread, and the snapshot returned is the render thread's until
+	 * the next call.
+	 *
+	 * @return The newest snapshot, or the last one drawn if there's
+	 * nothing newer
+	 */
+	public RenderSnapshot getLatest() {
+		if ((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & INDEX;
+		}
+		return snapshots[front];
+	}
+}
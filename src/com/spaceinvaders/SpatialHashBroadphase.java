@@ -0,0 +1,184 @@
+package com.spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * A broadphase that drops every entity into a uniform grid of cells
+ * based on the area it swept through this loop and its sprite size. Only entities that share a cell
+ * are reported as candidate pairs, so the cost grows with the number
+ * of entities rather than the number of pairs of entities.
+ * <p>
+ * The grid is never stored as a 2D array, cells are hashed into a fixed
+ * table of buckets so entities can wander off screen (like shots do)
+ * without us worrying about the grid bounds. The grid is rebuilt
+ * from scratch each time pairs are requested, which is cheap since
+ * all the storage is kept in primitive arrays and reused between loops.
+ *
+ */
+public class SpatialHashBroadphase implements Broadphase {
+	/** The size of each grid cell in pixels */
+	private int cellSize;
+	/** The left most cell covered by each inserted entity */
+	private int[] minCellX = new int[64];
+	/** The top most cell covered by each inserted entity */
+	private int[] minCellY = new int[64];
+	/** The first entry in each bucket, or -1 if the bucket is empty */
+	private int[] bucketHead = new int[256];
+	/** The pass in which each bucket was last written, lets us skip clearing the table */
+	private int[] bucketStamp = new int[256];
+	/** The entity index held in each bucket entry */
+	private int[] entryEntity = new int[256];
+	/** The x coordinate of the cell each bucket entry was added for */
+	private int[] entryCellX = new int[256];
+	/** The y coordinate of the cell each bucket entry was added for */
+	private int[] entryCellY = new int[256];
+	/** The next entry in the same bucket, or -1 at the end of the chain */
+	private int[] entryNext = new int[256];
+	/** The number of bucket entries used this pass */
+	private int entryCount;
+	/** The current pass, used to stamp buckets */
+	private int pass;
+
+	/**
+	 * Create a new spatial hash broadphase
+	 *
+	 * @param cellSize The size of each grid cell in pixels. This should be
+	 * a little larger than the typical sprite.
+	 */
+	public SpatialHashBroadphase(int cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Rebuild the grid from the entities given and report each pair
+	 * of entities that shares at least one cell.
+	 *
+	 * @param world The world holding the entities to consider
+	 * @param listener The listener to be notified of each candidate pair
+	 */
+	public void findPairs(EntityWorld world, PairListener listener) {
+		int count = world.size();
+		ensureEntityCapacity(count);
+		ensureBucketCapacity(count * 2);
+
+		pass++;
+		entryCount = 0;
+
+		for (int i=0;i<count;i++) {
+			// work out the range of cells this entity covered while it
+			// moved this loop, a sprite covers the pixels x to x+width-1
+			int x0 = Math.floorDiv((int) Math.floor(Math.min(world.prevX[i],world.x[i])),cellSize);
+			int y0 = Math.floorDiv((int) Math.floor(Math.min(world.prevY[i],world.y[i])),cellSize);
+			int x1 = Math.floorDiv((int) Math.ceil(Math.max(world.prevX[i],world.x[i]))+world.width[i]-1,cellSize);
+			int y1 = Math.floorDiv((int) Math.ceil(Math.max(world.prevY[i],world.y[i]))+world.height[i]-1,cellSize);
+			minCellX[i] = x0;
+			minCellY[i] = y0;
+
+			for (int cy=y0;cy<=y1;cy++) {
+				for (int cx=x0;cx<=x1;cx++) {
+					int bucket = bucketFor(cx,cy);
+
+					// compare against everything inserted before us
+					// that landed in the same bucket
+					for (int e=bucketHead[bucket];e!=-1;e=entryNext[e]) {
+						// different cells can hash into the same bucket, so
+						// make sure the entry really is for this cell
+						if ((entryCellX[e] != cx) || (entryCellY[e] != cy)) {
+							continue;
+						}
+						int other = entryEntity[e];
+
+						// two entities may share several cells, only report the
+						// pair from the first cell they share so it's reported once
+						if ((cx != Math.max(x0,minCellX[other])) || (cy != Math.max(y0,minCellY[other]))) {
+							continue;
+						}
+
+						listener.pair(world,other,i);
+					}
+
+					addEntry(bucket,i,cx,cy);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the bucket that a given cell hashes to
+	 *
+	 * @param cx The x coordinate of the cell
+	 * @param cy The y coordinate of the cell
+	 * @return The index of the bucket for the cell
+	 */
+	private int bucketFor(int cx,int cy) {
+		int bucket = ((cx * 73856093) ^ (cy * 19349663)) & (bucketHead.length - 1);
+
+		// lazily clear buckets we haven't touched this pass
+		if (bucketStamp[bucket] != pass) {
+			bucketStamp[bucket] = pass;
+			bucketHead[bucket] = -1;
+		}
+
+		return bucket;
+	}
+
+	/**
+	 * Add an entity to the front of a bucket's chain
+	 *
+	 * @param bucket The bucket to add to
+	 * @param entity The index of the entity being added
+	 * @param cx The x coordinate of the cell the entity covers
+	 * @param cy The y coordinate of the cell the entity covers
+	 */
+	private void addEntry(int bucket,int entity,int cx,int cy) {
+		if (entryCount == entryEntity.length) {
+			entryEntity = Arrays.copyOf(entryEntity,entryCount*2);
+			entryCellX = Arrays.copyOf(entryCellX,entryCount*2);
+			entryCellY = Arrays.copyOf(entryCellY,entryCount*2);
+			entryNext = Arrays.copyOf(entryNext,entryCount*2);
+		}
+
+		entryEntity[entryCount] = entity;
+		entryCellX[entryCount] = cx;
+		entryCellY[entryCount] = cy;
+		entryNext[entryCount] = bucketHead[bucket];
+		bucketHead[bucket] = entryCount;
+		entryCount++;
+	}
+
+	/**
+	 * Make sure the per-entity arrays can hold the given number of entities
+	 *
+	 * @param count The number of entities we need to hold
+	 */
+	private void ensureEntityCapacity(int count) {
+		if (count <= minCellX.length) {
+			return;
+		}
+
+		int size = Math.max(count,minCellX.length*2);
+		minCellX = new int[size];
+		minCellY = new int[size];
+	}
+
+	/**
+	 * Make sure the bucket table has at least the given number of buckets.
+	 * The table is always a power of two in size so we can mask rather
+	 * than divide when hashing.
+	 *
+	 * @param buckets The minimum number of buckets required
+	 */
+	private void ensureBucketCapacity(int buckets) {
+		if (buckets <= bucketHead.length) {
+			return;
+		}
+
+		int size = bucketHead.length;
+		while (size < buckets) {
+			size *= 2;
+		}
+		bucketHead = new int[size];
+		bucketStamp = new int[size];
+		pass = 0;
+	}
+}
@@ -9,19 +9,76 @@ import java.awt.Image;
  * not the location. This allows us to use a single sprite in
  * lots of different places without having to store multiple 
  * copies of the image.
+ * <p>
+ * A sprite is a region of an image, which is the whole of its own image
+ * when first loaded and a region of the shared atlas once it's been
+ * packed into one (@see SpriteAtlas).
  * 
  */
 public class Sprite {
-	/** The image to be drawn for this sprite */
-	private Image image;
+	/** The id of this sprite in the sprite store */
+	private int id;
+	/** The image holding this sprite */
+	private volatile Image image;
+	/** The x location of this sprite in its image */
+	private int imageX;
+	/** The y location of this sprite in its image */
+	private int imageY;
+	/** The width of this sprite */
+	private int width;
+	/** The height of this sprite */
+	private int height;
+	/** The solid pixels of this sprite, used for exact collisions */
+	private CollisionMask mask;
 	
 	/**
 	 * Create a new sprite based on an image
 	 * 
+	 * @param id The id of this sprite in the sprite store
 	 * @param image The image that is this sprite
+	 * @param mask The solid pixels of the image
 	 */
-	public Sprite(Image image) {
+	public Sprite(int id,Image image,CollisionMask mask) {
+		this.id = id;
 		this.image = image;
+		this.mask = mask;
+		this.width = image.getWidth(null);
+		this.height = image.getHeight(null);
+	}
+
+	/**
+	 * Move this sprite to a region of another image, the sprite must
+	 * already have been copied there
+	 *
+	 * @param image The image now holding this sprite
+	 * @param x The x location of this sprite in the image
+	 * @param y The y location of this sprite in the image
+	 */
+	void moveTo(Image image,int x,int y) {
+		imageX = x;
+		imageY = y;
+		// written last, so a thread that sees the new image sees the 
+		// new region too
+		this.image = image;
+	}
+
+	/**
+	 * Get the image holding this sprite, which may be shared with other
+	 * sprites
+	 *
+	 * @return The image holding this sprite
+	 */
+	public Image getImage() {
+		return image;
+	}
+	
+	/**
+	 * Get the id of this sprite, used to refer to it from the entity world
+	 * 
+	 * @return The id of this sprite in the sprite store
+	 */
+	public int getId() {
+		return id;
 	}
 	
 	/**
@@ -30,7 +87,7 @@ public class Sprite {
 	 * @return The width in pixels of this sprite
 	 */
 	public int getWidth() {
-		return image.getWidth(null);
+		return width;
 	}
 
 	/**
@@ -39,7 +96,16 @@ public class Sprite {
 	 * @return The height in pixels of this sprite
 	 */
 	public int getHeight() {
-		return image.getHeight(null);
+		return height;
+	}
+	
+	/**
+	 * Get the mask of solid pixels in this sprite
+	 * 
+	 * @return The collision mask of this sprite
+	 */
+	public CollisionMask getMask() {
+		return mask;
 	}
 	
 	/**
@@ -50,6 +116,9 @@ public class Sprite {
 	 * @param y The y location at which to draw the sprite
 	 */
 	public void draw(Graphics g,int x,int y) {
-		g.drawImage(image,x,y,null);
+		Image source = image;
+		int sx = imageX;
+		int sy = imageY;
+		g.drawImage(source,x,y,x+width,y+height,sx,sy,sx+width,sy+height,null);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,236 @@
+package com.spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs sprites into a single shared image, so drawing a frame full of
+ * different sprites keeps copying from the same image instead of 
+ * switching between one per sprite. Each sprite is copied into the 
+ * atlas and then becomes a region of it.
+ * <p>
+ * Sprites are packed onto shelves: tallest first, left to right along
+ * a shelf until the atlas is full width, then on to a new shelf below.
+ * The sprites in this game are all much the same size, so very little
+ * space is wasted.
+ * <p>
+ * The atlas can be kept in video memory (a VolatileImage), which is 
+ * fastest to draw from where it's supported but can be lost at any 
+ * time. The packed sprites are kept in an ordinary image as well, and
+ * the atlas is checked before each frame (validate()) and copied back 
+ * from it whenever it's been lost.
+ *
+ */
+public class SpriteAtlas {
+	/** The space left between sprites, so filtering never picks up a neighbour */
+	private static final int PADDING = 1;
+	/** The widest the atlas is made */
+	private static final int MAX_WIDTH = 2048;
+
+	/** The image holding every sprite, the one the sprites are drawn from */
+	private Image image;
+	/** The packed sprites in an ordinary image, the atlas is restored from this */
+	private Image packed;
+	/** True if the atlas is kept in video memory */
+	private boolean videoMemory;
+	/** The atlas in video memory, or null if it's kept in an ordinary image */
+	private VolatileImage accelerated;
+	/** The sprites in the atlas, in the order they're laid out */
+	private Sprite[] order;
+	/** The x location of each sprite in the atlas */
+	private int[] x;
+	/** The y location of each sprite in the atlas */
+	private int[] y;
+	/** The number of times the atlas in video memory has been restored */
+	private int restoreCount;
+
+	/**
+	 * Pack a set of sprites into a new atlas in an ordinary image, 
+	 * moving each sprite into it
+	 *
+	 * @param sprites The sprites to pack
+	 */
+	public SpriteAtlas(Sprite[] sprites) {
+		this(sprites,false);
+	}
+
+	/**
+	 * Pack a set of sprites into a new atlas, moving each sprite into it
+	 *
+	 * @param sprites The sprites to pack
+	 * @param videoMemory True if the atlas should be kept in video memory,
+	 * ignored when there's no screen
+	 */
+	public SpriteAtlas(Sprite[] sprites,boolean videoMemory) {
+		order = sprites.clone();
+		Arrays.sort(order,new Comparator<Sprite>() {
+			public int compare(Sprite a,Sprite b) {
+				return b.getHeight() - a.getHeight();
+			}
+		});
+
+		// make the atlas roughly square, and at least as wide as the
+		// widest sprite
+		long area = 0;
+		int widest = 0;
+		for (int i=0;i<order.length;i++) {
+			area += (long) (order[i].getWidth() + PADDING) * (order[i].getHeight() + PADDING);
+			widest = Math.max(widest,order[i].getWidth() + PADDING);
+		}
+		int width = Math.max(widest,Math.min(MAX_WIDTH,(int) Math.ceil(Math.sqrt(area * 1.25))));
+
+		// lay the sprites out on shelves
+		x = new int[order.length];
+		y = new int[order.length];
+		int shelfX = 0;
+		int shelfY = 0;
+		int shelfHeight = 0;
+		for (int i=0;i<order.length;i++) {
+			int w = order[i].getWidth() + PADDING;
+			if (shelfX + w > width) {
+				shelfY += shelfHeight;
+				shelfX = 0;
+				shelfHeight = 0;
+			}
+			x[i] = shelfX;
+			y[i] = shelfY;
+			shelfX += w;
+			shelfHeight = Math.max(shelfHeight,order[i].getHeight() + PADDING);
+		}
+		int height = Math.max(1,shelfY + shelfHeight);
+
+		// copy the sprites in, then point them at the atlas
+		packed = createImage(width,height);
+		Graphics g = packed.getGraphics();
+		for (int i=0;i<order.length;i++) {
+			order[i].draw(g,x[i],y[i]);
+		}
+		g.dispose();
+
+		image = packed;
+		this.videoMemory = videoMemory && !GraphicsEnvironment.isHeadless();
+		validate();
+		moveSprites();
+	}
+
+	/**
+	 * Point every sprite in the atlas at the atlas image
+	 */
+	private void moveSprites() {
+		for (int i=0;i<order.length;i++) {
+			order[i].moveTo(image,x[i],y[i]);
+		}
+	}
+
+	/**
+	 * Check the atlas is ready to draw from, copying the sprites back 
+	 * into video memory if they've been lost. Called before drawing each
+	 * frame, and does nothing for an atlas in an ordinary image.
+	 * <p>
+	 * Only called from the thread drawing the game.
+	 */
+	public void validate() {
+		if (!videoMemory) {
+			return;
+		}
+
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		int status = accelerated == null ? VolatileImage.IMAGE_INCOMPATIBLE : accelerated.validate(gc);
+		while ((status != VolatileImage.IMAGE_OK) || accelerated.contentsLost()) {
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				// the screen has changed under us (or it's the first 
+				// time through), make the atlas again and move the 
+				// sprites over to it
+				if (accelerated != null) {
+					accelerated.flush();
+				}
+				accelerated = gc.createCompatibleVolatileImage(packed.getWidth(null),packed.getHeight(null),Transparency.BITMASK);
+				image = accelerated;
+				moveSprites();
+			}
+
+			Graphics2D g = accelerated.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(packed,0,0,null);
+			g.dispose();
+			restoreCount++;
+			status = accelerated.validate(gc);
+		}
+	}
+
+	/**
+	 * Release the video memory and cached copies held by the atlas once
+	 * it has been replaced. The atlas shouldn't be drawn from afterwards.
+	 * <p>
+	 * Only called from the thread drawing the game.
+	 */
+	public void flush() {
+		if (accelerated != null) {
+			accelerated.flush();
+		}
+		packed.flush();
+	}
+
+	/**
+	 * Check if the atlas in video memory was lost since it was last 
+	 * validated, so anything drawn from it since can't be trusted
+	 *
+	 * @return True if the atlas has been lost
+	 */
+	public boolean contentsLost() {
+		return (accelerated != null) && accelerated.contentsLost();
+	}
+
+	/**
+	 * Check if the atlas is held in video memory
+	 *
+	 * @return True if the atlas is a VolatileImage
+	 */
+	public boolean isInVideoMemory() {
+		return videoMemory;
+	}
+
+	/**
+	 * Get the number of times the atlas has been copied into video 
+	 * memory, once when it's created and again each time it's lost
+	 *
+	 * @return The number of times the atlas has been restored
+	 */
+	public int getRestoreCount() {
+		return restoreCount;
+	}
+
+	/**
+	 * Create the image to hold the atlas, accelerated where there's a 
+	 * screen to match
+	 *
+	 * @param width The width of the atlas
+	 * @param height The height of the atlas
+	 * @return The new image
+	 */
+	private static Image createImage(int width,int height) {
+		if (GraphicsEnvironment.isHeadless()) {
+			return new BufferedImage(width,height,BufferedImage.TYPE_INT_ARGB);
+		}
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		return gc.createCompatibleImage(width,height,Transparency.BITMASK);
+	}
+
+	/**
+	 * Get the image holding every sprite in the atlas
+	 *
+	 * @return The atlas image
+	 */
+	public Image getImage() {
+		return image;
+	}
+}
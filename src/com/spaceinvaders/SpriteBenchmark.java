@@ -0,0 +1,120 @@
+package com.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Random;
+
+import com.spaceinvader.timer.VirtualClock;
+
+/**
+ * Compares the throughput of drawing thousands of sprites each from an
+ * image of its own with drawing them all from a shared atlas (@see 
+ * SpriteAtlas). Every sprite in the game is drawn at random places 
+ * across the screen, cycling through the sprites so each draw switches
+ * image when they aren't in an atlas.
+ * <p>
+ * The sprites are drawn to an accelerated image where there's a screen,
+ * or an ordinary one when running headless.
+ * <p>
+ * Usage: SpriteBenchmark [sprites per frame, default 5000] [frames, default 200]
+ *
+ */
+public class SpriteBenchmark {
+	/** The width of the screen drawn */
+	private static final int WIDTH = 1366;
+	/** The height of the screen drawn */
+	private static final int HEIGHT = 768;
+
+	/**
+	 * The entry point to the benchmark
+	 *
+	 * @param argv The arguments passed in, optionally the number of
+	 * sprites drawn each frame and the number of frames
+	 */
+	public static void main(String argv[]) {
+		int count = argv.length > 0 ? Integer.parseInt(argv[0]) : 5000;
+		int frames = argv.length > 1 ? Integer.parseInt(argv[1]) : 200;
+
+		// register and load every sprite the game uses, keeping a copy 
+		// of each with its own image before they're moved into the atlas
+		new Simulation(WIDTH,HEIGHT,1,new VirtualClock());
+		SpriteStore store = SpriteStore.get();
+		int spriteCount = SpriteShapes.get().getCount();
+		Sprite[] separate = new Sprite[spriteCount];
+		for (int i=0;i<spriteCount;i++) {
+			Sprite s = store.getSprite(i);
+			separate[i] = new Sprite(i,s.getImage(),s.getMask());
+		}
+		store.buildAtlas();
+		Sprite[] packed = new Sprite[spriteCount];
+		for (int i=0;i<spriteCount;i++) {
+			packed[i] = store.getSprite(i);
+		}
+
+		Random random = new Random(1);
+		int[] x = new int[count];
+		int[] y = new int[count];
+		for (int i=0;i<count;i++) {
+			x[i] = random.nextInt(WIDTH);
+			y[i] = random.nextInt(HEIGHT);
+		}
+
+		Image target = createTarget();
+		System.out.println("Drawing "+count+" sprites a frame to "+
+				(target instanceof VolatileImage ? "an accelerated image" : "an ordinary image"));
+
+		// warm up both before timing either
+		run(target,separate,x,y,frames / 4);
+		run(target,packed,x,y,frames / 4);
+		long separateTime = run(target,separate,x,y,frames);
+		long packedTime = run(target,packed,x,y,frames);
+
+		System.out.println("Separate images: "+(int) ((double) count * frames * 1000000000L / separateTime)+" sprites/sec");
+		System.out.println("Atlas:           "+(int) ((double) count * frames * 1000000000L / packedTime)+" sprites/sec");
+	}
+
+	/**
+	 * Draw a number of frames of sprites
+	 *
+	 * @param target The image to draw to
+	 * @param sprites The sprites to cycle through
+	 * @param x The x location of each draw
+	 * @param y The y location of each draw
+	 * @param frames The number of frames to draw
+	 * @return The time taken (ns)
+	 */
+	private static long run(Image target,Sprite[] sprites,int[] x,int[] y,int frames) {
+		long start = System.nanoTime();
+		for (int f=0;f<frames;f++) {
+			Graphics2D g = (Graphics2D) target.getGraphics();
+			for (int i=0;i<x.length;i++) {
+				sprites[i % sprites.length].draw(g,x[i],y[i]);
+			}
+			g.dispose();
+		}
+
+		// make sure the drawing has really finished before stopping the clock
+		if (target instanceof VolatileImage) {
+			((VolatileImage) target).getSnapshot();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Create the image to draw to
+	 *
+	 * @return An accelerated image if there's a screen, an ordinary one if not
+	 */
+	private static Image createTarget() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return new BufferedImage(WIDTH,HEIGHT,BufferedImage.TYPE_INT_RGB);
+		}
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		return gc.createCompatibleVolatileImage(WIDTH,HEIGHT,Transparency.OPAQUE);
+	}
+}
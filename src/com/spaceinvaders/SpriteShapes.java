@@ -0,0 +1,136 @@
+package com.spaceinvaders;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A resource manager for the shape of each sprite, its size and which
+ * pixels are solid, kept apart from the images drawn on screen. This is
+ * all the game logic needs to know about a sprite, so the simulation can
+ * run without a display. The sprite store hands out images for the same
+ * ids when there is something to draw on.
+ * <p>
+ * Images are only decoded here to read their pixels, nothing is created
+ * that needs a graphics device.
+ * <p>
+ * Many simulations can share the shapes from different threads. Looking
+ * up a shape never locks, only loading a new one does.
+ * <p>
+ * [singleton]
+ * <p>
+ */
+public class SpriteShapes {
+	/** The single instance of this class */
+	private static SpriteShapes single = new SpriteShapes();
+
+	/**
+	 * Get the single instance of this class
+	 *
+	 * @return The single instance of this class
+	 */
+	public static SpriteShapes get() {
+		return single;
+	}
+
+	/** The ids of the shapes loaded, from reference to id */
+	private ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<String,Integer>();
+	/** The reference each shape was loaded from, indexed by id. Replaced, never changed, when a shape is added */
+	private volatile String[] refs = new String[0];
+	/** The solid pixels of each shape, indexed by id. Replaced, never changed, when a shape is added */
+	private volatile CollisionMask[] masks = new CollisionMask[0];
+
+	/**
+	 * Retrieve the id of a sprite, loading its shape if needed
+	 *
+	 * @param ref The reference to the image of the sprite
+	 * @return The id of the sprite for the requested reference
+	 */
+	public int getId(String ref) {
+		Integer id = ids.get(ref);
+		if (id != null) {
+			return id.intValue();
+		}
+		// decode the image before taking the lock, so sprites can be 
+		// decoded on several threads at once
+		return load(ref,ImageCache.get().getImage(ref));
+	}
+
+	/**
+	 * Load the shape of a sprite
+	 *
+	 * @param ref The reference to the image of the sprite
+	 * @param sourceImage The decoded image of the sprite
+	 * @return The id of the sprite for the requested reference
+	 */
+	private synchronized int load(String ref,BufferedImage sourceImage) {
+		// another thread may have loaded it while we waited
+		Integer id = ids.get(ref);
+		if (id != null) {
+			return id.intValue();
+		}
+
+		// work out which pixels are solid now, while we've got the
+		// source image to hand, so collisions never need to read pixels
+		int newId = refs.length;
+		String[] newRefs = Arrays.copyOf(refs,newId+1);
+		CollisionMask[] newMasks = Arrays.copyOf(masks,newId+1);
+		newRefs[newId] = ref;
+		newMasks[newId] = CollisionMask.fromImage(sourceImage);
+		refs = newRefs;
+		masks = newMasks;
+		ids.put(ref,Integer.valueOf(newId));
+
+		return newId;
+	}
+
+	/**
+	 * Get the number of sprites registered so far, their ids run from
+	 * zero up to one less than this
+	 *
+	 * @return The number of sprites registered
+	 */
+	public int getCount() {
+		return refs.length;
+	}
+
+	/**
+	 * Get the reference a sprite was loaded from
+	 *
+	 * @param id The id of the sprite
+	 * @return The reference to the image of the sprite
+	 */
+	public String getRef(int id) {
+		return refs[id];
+	}
+
+	/**
+	 * Get the solid pixels of a sprite
+	 *
+	 * @param id The id of the sprite
+	 * @return The collision mask of the sprite
+	 */
+	public CollisionMask getMask(int id) {
+		return masks[id];
+	}
+
+	/**
+	 * Get the width of a sprite
+	 *
+	 * @param id The id of the sprite
+	 * @return The width of the sprite in pixels
+	 */
+	public int getWidth(int id) {
+		return getMask(id).getWidth();
+	}
+
+	/**
+	 * Get the height of a sprite
+	 *
+	 * @param id The id of the sprite
+	 * @return The height of the sprite in pixels
+	 */
+	public int getHeight(int id) {
+		return getMask(id).getHeight();
+	}
+}
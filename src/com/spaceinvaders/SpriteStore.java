@@ -1,15 +1,13 @@
 package com.spaceinvaders;
 
+import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
+import java.awt.RenderingHints;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.net.URL;
-import java.util.HashMap;
-
-import javax.imageio.ImageIO;
+import java.util.Arrays;
 
 /**
  * A resource manager for sprites in the game. Its often quite important
@@ -17,6 +15,18 @@ import javax.imageio.ImageIO;
  * it makes sense to have a central resource loader that goes away, gets
  * your resources and caches them for future use.
  * <p>
+ * Sprites share their ids with the sprite shapes, which hold the size
+ * and solid pixels used by the game logic. The store only adds the
+ * accelerated image needed to draw each one.
+ * <p>
+ * The images are scaled once, to the scale the playfield is being drawn
+ * at (@see Playfield), so drawing a sprite is always a straight copy. 
+ * Changing the scale creates every sprite again at the new size.
+ * <p>
+ * Sprites can be asked for from any thread. Looking up a sprite that's
+ * already been created takes no locks, creating one is done under a 
+ * lock so it only ever happens once.
+ * <p>
  * [singleton]
  * <p>
  */
@@ -33,8 +43,152 @@ public class SpriteStore {
 		return single;
 	}
 	
-	/** The cached sprite map, from reference to sprite instance */
-	private HashMap<String,Sprite> sprites = new HashMap<String, Sprite>();
+	/** 
+	 * The cached sprites indexed by their id, null where not yet created.
+	 * Replaced rather than changed when a sprite is added, so it can be 
+	 * read from any thread without locking
+	 */
+	private volatile Sprite[] spritesById = new Sprite[0];
+	/** The atlas the sprites have been packed into, or null if they haven't */
+	private volatile SpriteAtlas atlas;
+	/** The number of screen pixels for each pixel of a source image */
+	private volatile double scale = 1;
+	/** True if the atlas should be kept in video memory */
+	private volatile boolean videoMemory = false;
+
+	/**
+	 * Set whether the atlas is kept in video memory (@see SpriteAtlas),
+	 * used by the next atlas built
+	 *
+	 * @param videoMemory True to keep the atlas in a VolatileImage
+	 */
+	public void setVideoMemory(boolean videoMemory) {
+		this.videoMemory = videoMemory;
+	}
+
+	/**
+	 * Count the sprite images currently accelerated, to check they've
+	 * stayed in video memory
+	 *
+	 * @param gc The graphics configuration the sprites are drawn to
+	 * @return The number of sprites whose image is accelerated
+	 */
+	public int countAccelerated(GraphicsConfiguration gc) {
+		Sprite[] sprites = spritesById;
+		int count = 0;
+		for (int i=0;i<sprites.length;i++) {
+			if ((sprites[i] != null) && sprites[i].getImage().getCapabilities(gc).isAccelerated()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of sprites created so far
+	 *
+	 * @return The number of sprites created
+	 */
+	public int getLoadedCount() {
+		Sprite[] sprites = spritesById;
+		int count = 0;
+		for (int i=0;i<sprites.length;i++) {
+			if (sprites[i] != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Set the scale the sprites are drawn at, creating every sprite 
+	 * again at the new size (and packing them into a new atlas if they
+	 * were in one). Sprites already handed out keep their old size, so
+	 * they should be looked up again afterwards.
+	 *
+	 * @param scale The number of screen pixels for each pixel of a 
+	 * source image
+	 */
+	public synchronized void setScale(double scale) {
+		if (scale == this.scale) {
+			return;
+		}
+
+		this.scale = scale;
+		spritesById = new Sprite[0];
+		if (atlas != null) {
+			buildAtlas();
+		}
+	}
+
+	/**
+	 * Get the scale the sprites are drawn at
+	 *
+	 * @return The number of screen pixels for each pixel of a source image
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * Pack every sprite registered so far into a single atlas, loading
+	 * any that haven't been yet (@see SpriteAtlas). Sprites registered 
+	 * after this keep an image of their own until the atlas is built 
+	 * again.
+	 *
+	 * @return The atlas built
+	 */
+	public synchronized SpriteAtlas buildAtlas() {
+		int count = SpriteShapes.get().getCount();
+		Sprite[] sprites = new Sprite[count];
+		for (int i=0;i<count;i++) {
+			sprites[i] = getSprite(i);
+		}
+		SpriteAtlas old = atlas;
+		atlas = new SpriteAtlas(sprites,videoMemory);
+
+		// the sprites are copied out of the old atlas into the new one, 
+		// after which the video memory it holds can be let go of now 
+		// rather than when it's collected
+		if (old != null) {
+			old.flush();
+		}
+
+		return atlas;
+	}
+
+	/**
+	 * Get the atlas the sprites have been packed into
+	 *
+	 * @return The atlas, or null if one hasn't been built
+	 */
+	public SpriteAtlas getAtlas() {
+		return atlas;
+	}
+	
+	/**
+	 * Retrieve a sprite from the store by its id in the sprite shapes
+	 * 
+	 * @param id The id of the sprite
+	 * @return The sprite with the given id
+	 */
+	public Sprite getSprite(int id) {
+		Sprite[] sprites = spritesById;
+		if ((id < sprites.length) && (sprites[id] != null)) {
+			return sprites[id];
+		}
+		return loadSprite(id);
+	}
+	
+	/**
+	 * Retrieve the id of a sprite, loading it if needed
+	 * 
+	 * @param ref The reference to the image to use for the sprite
+	 * @return The id of the sprite for the request reference
+	 */
+	public int getSpriteId(String ref) {
+		return SpriteShapes.get().getId(ref);
+	}
 	
 	/**
 	 * Retrieve a sprite from the store
@@ -43,43 +197,51 @@ public class SpriteStore {
 	 * @return A sprite instance containing an accelerate image of the request reference
 	 */
 	public Sprite getSprite(String ref) {
-		// if we've already got the sprite in the cache
-		// then just return the existing version
-		if (sprites.get(ref) != null) {
-			return (Sprite) sprites.get(ref);
+		return getSprite(getSpriteId(ref));
+	}
+	
+	/**
+	 * Create the accelerated image for a sprite
+	 * 
+	 * @param id The id of the sprite in the sprite shapes
+	 * @return The newly created sprite
+	 */
+	private synchronized Sprite loadSprite(int id) {
+		// another thread may have created it while we waited
+		Sprite[] sprites = spritesById;
+		if ((id < sprites.length) && (sprites[id] != null)) {
+			return sprites[id];
 		}
+
+		// the decoded image is shared with the sprite shapes, which 
+		// has already asked for it, so this won't decode it again
+		BufferedImage sourceImage = ImageCache.get().getImage(SpriteShapes.get().getRef(id));
 		
-		// otherwise, go away and grab the sprite from the resource
-		// loader
-		BufferedImage sourceImage = null;
-		
-		try {
-			// The ClassLoader.getResource() ensures we get the sprite
-			// from the appropriate place, this helps with deploying the game
-			// with things like webstart. You could equally do a file look
-			// up here.
-			URL url = this.getClass().getClassLoader().getResource(ref);
-			
-			if (url == null) {
-				Util.fail("Can't find ref: "+ref);
-			}
-			
-			// use ImageIO to read the image in
-			sourceImage = ImageIO.read(url);
-		} catch (IOException e) {
-			Util.fail("Failed to load: "+ref);
+		// create an accelerated image of the right size to store our 
+		// sprite in, or an ordinary one if there's no screen to match
+		int width = Math.max(1,(int) Math.round(sourceImage.getWidth() * scale));
+		int height = Math.max(1,(int) Math.round(sourceImage.getHeight() * scale));
+		Image image;
+		if (GraphicsEnvironment.isHeadless()) {
+			image = new BufferedImage(width,height,BufferedImage.TYPE_INT_ARGB);
+		} else {
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+			image = gc.createCompatibleImage(width,height,Transparency.BITMASK);
 		}
 		
-		// create an accelerated image of the right size to store our sprite in
-		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
-		Image image = gc.createCompatibleImage(sourceImage.getWidth(),sourceImage.getHeight(),Transparency.BITMASK);
-		
-		// draw our source image into the accelerated image
-		image.getGraphics().drawImage(sourceImage,0,0,null);
+		// draw our source image into the accelerated image, scaled to
+		// the nearest pixel so the edges stay as sharp as the source's
+		Graphics2D g = (Graphics2D) image.getGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g.drawImage(sourceImage,0,0,width,height,null);
+		g.dispose();
 		
-		// create a sprite, add it the cache then return it
-		Sprite sprite = new Sprite(image);
-		sprites.put(ref,sprite);
+		// create a sprite, sharing the solid pixels worked out for
+		// the game logic, and add it to the cache
+		Sprite sprite = new Sprite(id,image,SpriteShapes.get().getMask(id));
+		Sprite[] newSprites = Arrays.copyOf(sprites,Math.max(sprites.length,id+1));
+		newSprites[id] = sprite;
+		spritesById = newSprites;
 		
 		return sprite;
 	}
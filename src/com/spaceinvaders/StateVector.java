@@ -0,0 +1,95 @@
+package com.spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * The state of a simulation flattened into a run of primitive values,
+ * written and read back in the same order by the simulation. Doubles
+ * are kept as their raw bits so a state read back is exactly the state
+ * written. The values are kept in a reused array that only grows when
+ * a state is bigger than any before it.
+ *
+ */
+class StateVector {
+	/** The values written */
+	long[] values = new long[256];
+	/** The number of values written */
+	int length;
+	/** The index of the next value to read */
+	int position;
+	/** The message shown by the simulation, kept alongside the values */
+	String message;
+
+	/**
+	 * Empty the vector ready to write a new state
+	 */
+	void clear() {
+		length = 0;
+		position = 0;
+		message = null;
+	}
+
+	/**
+	 * Set the number of values held, any new values are zero
+	 *
+	 * @param length The number of values to hold
+	 */
+	void setLength(int length) {
+		if (length > values.length) {
+			values = Arrays.copyOf(values,Math.max(length,values.length*2));
+		}
+		if (length > this.length) {
+			Arrays.fill(values,this.length,length,0);
+		}
+		this.length = length;
+		position = 0;
+	}
+
+	/**
+	 * Add a value to the end of the vector
+	 *
+	 * @param value The value to add
+	 */
+	void put(long value) {
+		if (length == values.length) {
+			values = Arrays.copyOf(values,length*2);
+		}
+		values[length++] = value;
+	}
+
+	/**
+	 * Add a double to the end of the vector
+	 *
+	 * @param value The value to add
+	 */
+	void putDouble(double value) {
+		put(Double.doubleToLongBits(value));
+	}
+
+	/**
+	 * Read the next value
+	 *
+	 * @return The next value
+	 */
+	long get() {
+		return values[position++];
+	}
+
+	/**
+	 * Read the next value as an int
+	 *
+	 * @return The next value
+	 */
+	int getInt() {
+		return (int) values[position++];
+	}
+
+	/**
+	 * Read the next value as a double
+	 *
+	 * @return The next value
+	 */
+	double getDouble() {
+		return Double.longBitsToDouble(values[position++]);
+	}
+}
@@ -0,0 +1,108 @@
+package com.spaceinvaders;
+
+/**
+ * A continuous collision check between two moving boxes. Rather than
+ * just comparing where the boxes ended up, the check considers the
+ * whole path each box took since its previous position. This stops
+ * fast entities (like shots) passing straight through others when a
+ * long loop moves them further than their own size.
+ * <p>
+ * The check works on the motion of the first box relative to the
+ * second, which turns the problem into a line segment against a box
+ * grown by the size of the first box. Clipping the segment against the
+ * box one axis at a time gives the fraction of the loop during which
+ * the boxes overlap.
+ *
+ */
+public class SweptCollision {
+	/** The fraction of the loop at which the boxes started overlapping */
+	private double entry;
+	/** The fraction of the loop at which the boxes stopped overlapping */
+	private double exit;
+
+	/**
+	 * Check if two boxes overlapped at any point while moving from
+	 * their previous to their current positions.
+	 *
+	 * @param ax0 The previous x location of the first box
+	 * @param ay0 The previous y location of the first box
+	 * @param ax1 The current x location of the first box
+	 * @param ay1 The current y location of the first box
+	 * @param aw The width of the first box
+	 * @param ah The height of the first box
+	 * @param bx0 The previous x location of the second box
+	 * @param by0 The previous y location of the second box
+	 * @param bx1 The current x location of the second box
+	 * @param by1 The current y location of the second box
+	 * @param bw The width of the second box
+	 * @param bh The height of the second box
+	 * @return True if the boxes overlapped at some point
+	 */
+	public boolean test(double ax0,double ay0,double ax1,double ay1,int aw,int ah,
+						double bx0,double by0,double bx1,double by1,int bw,int bh) {
+		// the position and movement of the first box relative to the second
+		double startX = ax0 - bx0;
+		double startY = ay0 - by0;
+		double moveX = (ax1 - bx1) - startX;
+		double moveY = (ay1 - by1) - startY;
+
+		entry = 0;
+		exit = 1;
+
+		// the boxes overlap while the relative position is strictly
+		// inside the second box grown by the size of the first
+		if (!clip(startX,moveX,-aw,bw)) {
+			return false;
+		}
+		return clip(startY,moveY,-ah,bh);
+	}
+
+	/**
+	 * Clip the period of overlap against one axis
+	 *
+	 * @param start The relative position at the start of the loop
+	 * @param move The relative movement over the loop
+	 * @param min The relative position above which the boxes overlap on this axis
+	 * @param max The relative position below which the boxes overlap on this axis
+	 * @return True if there is still some period of overlap
+	 */
+	private boolean clip(double start,double move,double min,double max) {
+		// not moving on this axis, either we always overlap or never do
+		if (move == 0) {
+			return (start > min) && (start < max);
+		}
+
+		double t0 = (min - start) / move;
+		double t1 = (max - start) / move;
+		if (t0 > t1) {
+			double temp = t0;
+			t0 = t1;
+			t1 = temp;
+		}
+
+		entry = Math.max(entry,t0);
+		exit = Math.min(exit,t1);
+
+		return entry < exit;
+	}
+
+	/**
+	 * Get the fraction of the loop at which the boxes started
+	 * overlapping in the last successful test
+	 *
+	 * @return The entry time between 0 and 1
+	 */
+	public double getEntry() {
+		return entry;
+	}
+
+	/**
+	 * Get the fraction of the loop at which the boxes stopped
+	 * overlapping in the last successful test
+	 *
+	 * @return The exit time between 0 and 1
+	 */
+	public double getExit() {
+		return exit;
+	}
+}
@@ -0,0 +1,232 @@
+package com.spaceinvaders;
+
+import java.util.Random;
+
+/**
+ * A harness that replays shots fired at moving aliens using a range
+ * of loop lengths, from a healthy 10ms up to a full second stall. The
+ * shots and aliens are run through the same pieces the game uses: the
+ * aliens live in an EntityWorld moved by the MovementSystem, the shots
+ * are fired, moved and collided by a ProjectileManager, and hits are
+ * decided by the Narrowphase against the real sprite masks.
+ * <p>
+ * For each loop length it works out which shots really should have
+ * hit by stepping the motion in tiny increments and comparing the
+ * sprite masks at every step, then checks the projectile manager
+ * reported every one of those hits in the same loop. This is done
+ * with pixel perfect collisions and with bounding boxes only, as
+ * chosen by the BOX_COLLISIONS setting in the game.
+ * <p>
+ * The harness doesn't need a display:
+ * <pre>
+ * java com.spaceinvaders.SweptCollisionReplay
+ * </pre>
+ * It exits with a non-zero status if any hit is missed.
+ *
+ */
+public class SweptCollisionReplay {
+	/** The loop lengths to replay, in milliseconds */
+	private static final long[] DELTAS = {10, 25, 50, 100, 250, 500, 1000};
+	/** The number of shots to fire for each loop length */
+	private static final int SHOTS = 2000;
+	/** The number of samples per millisecond used to find the true hits */
+	private static final int SAMPLES_PER_MS = 10;
+	/** The speed of a shot (pixels/sec), as fired by the player */
+	private static final double SHOT_SPEED = -300;
+	/** The sprites an alien can be showing when it's shot at */
+	private static final String[] ALIEN_SPRITES = {
+		"gameresources/alien.gif", "gameresources/alien2.gif", "gameresources/alien3.gif"};
+
+	/** The world holding the alien being shot at */
+	private EntityWorld world = new EntityWorld();
+	/** The system that moves the alien */
+	private MovementSystem movementSystem = new MovementSystem();
+	/** The formation passed to the movement system, the alien isn't in it */
+	private AlienFormation formation = new AlienFormation(world);
+	/** The check used to decide if a shot hit */
+	private Narrowphase narrowphase = new Narrowphase();
+	/** The manager for the shot in flight */
+	private ProjectileManager projectiles;
+	/** The sprite id of each alien sprite */
+	private int[] alienSprites = new int[ALIEN_SPRITES.length];
+	/** True if pixels are being compared, not just bounding boxes */
+	private boolean pixelPerfect;
+	/** True if the projectile manager reported a hit this loop */
+	private boolean reported;
+
+	/**
+	 * Create a new replay
+	 *
+	 * @param pixelPerfect True if sprite pixels should be compared once
+	 * the bounding boxes overlap
+	 */
+	private SweptCollisionReplay(boolean pixelPerfect) {
+		this.pixelPerfect = pixelPerfect;
+		narrowphase.setPixelPerfect(pixelPerfect);
+
+		projectiles = new ProjectileManager(1,"gameresources/shot.gif",new ProjectileListener() {
+			public void projectileHit(int side, Entity target) {
+				reported = true;
+			}
+		});
+		for (int i=0;i<ALIEN_SPRITES.length;i++) {
+			alienSprites[i] = SpriteShapes.get().getId(ALIEN_SPRITES[i]);
+		}
+	}
+
+	/**
+	 * Replay the shots for every loop length, in both collision modes,
+	 * and report the results
+	 *
+	 * @param argv The arguments passed to the harness, unused
+	 */
+	public static void main(String argv[]) {
+		int totalMissed = 0;
+		totalMissed += new SweptCollisionReplay(true).run();
+		totalMissed += new SweptCollisionReplay(false).run();
+
+		if (totalMissed > 0) {
+			System.out.println("FAILED: "+totalMissed+" hits missed by the projectile manager");
+			System.exit(1);
+		}
+		System.out.println("OK: no hits missed");
+	}
+
+	/**
+	 * Replay the shots for every loop length
+	 *
+	 * @return The number of hits missed
+	 */
+	private int run() {
+		System.out.println(pixelPerfect ? "Pixel perfect collisions" : "Bounding box collisions");
+		System.out.println("delta(ms)  hits  reported  missed");
+
+		int totalMissed = 0;
+		for (int d=0;d<DELTAS.length;d++) {
+			long delta = DELTAS[d];
+			// always replay the same shots so runs can be compared
+			Random random = new Random(1234);
+			int hits = 0;
+			int reportedHits = 0;
+			int missed = 0;
+
+			for (int s=0;s<SHOTS;s++) {
+				// an alien marching at up to the speed a late level would
+				// reach, that will be somewhere across the screen when a
+				// shot fired from the ship's line gets to it
+				double alienY = 50 + random.nextInt(200);
+				double alienDx = (random.nextBoolean() ? 1 : -1) * (75 + random.nextInt(300));
+				int sprite = alienSprites[random.nextInt(alienSprites.length)];
+				double shotY = 650;
+				double flightTime = (shotY - alienY) / -SHOT_SPEED;
+				double meetX = 100 + random.nextInt(Playfield.WIDTH - 200);
+				double alienX = meetX - (alienDx * flightTime);
+
+				// and the shot aimed roughly at where they'll meet
+				double shotX = meetX + random.nextInt(120) - 60;
+
+				world.clear();
+				int alien = world.add(null,EntityWorld.ALIEN,sprite,alienX,alienY);
+				world.dx[alien] = alienDx;
+				world.layer[alien] = CollisionLayer.ALIEN;
+				world.mask[alien] = CollisionLayer.bit(CollisionLayer.PLAYER_SHOT);
+				world.commit();
+				projectiles.clear();
+				projectiles.fire(shotX,shotY,0,SHOT_SPEED,ProjectileManager.PLAYER);
+				projectiles.commit();
+
+				while (projectiles.getLiveCount() > 0) {
+					int shot = projectiles.live[0];
+					double prevShotX = projectiles.x[shot];
+					double prevShotY = projectiles.y[shot];
+
+					movementSystem.move(world,formation,delta);
+					projectiles.move(delta);
+					// the shot may have been released for leaving the
+					// screen, so work out where it went ourselves
+					boolean truth = overlappedDuring(delta,world.prevX[alien],world.prevY[alien],
+													 world.x[alien],world.y[alien],sprite,
+													 prevShotX,prevShotY,prevShotX,prevShotY + (delta * SHOT_SPEED) / 1000);
+					reported = false;
+					projectiles.collide(world,narrowphase);
+
+					if (reported) {
+						reportedHits++;
+					}
+					if (truth) {
+						hits++;
+						if (!reported) {
+							missed++;
+						}
+					}
+					// a shot is used up by its first hit
+					if (truth || reported) {
+						break;
+					}
+				}
+			}
+
+			System.out.println(pad(delta,9)+pad(hits,6)+pad(reportedHits,10)+pad(missed,8));
+			totalMissed += missed;
+		}
+		System.out.println();
+
+		return totalMissed;
+	}
+
+	/**
+	 * Check if the shot and alien overlapped at any point during a loop
+	 * by stepping through it in tiny increments
+	 *
+	 * @param delta The length of the loop in milliseconds
+	 * @param alienX0 The x location of the alien at the start of the loop
+	 * @param alienY0 The y location of the alien at the start of the loop
+	 * @param alienX1 The x location of the alien at the end of the loop
+	 * @param alienY1 The y location of the alien at the end of the loop
+	 * @param sprite The sprite the alien is showing
+	 * @param shotX0 The x location of the shot at the start of the loop
+	 * @param shotY0 The y location of the shot at the start of the loop
+	 * @param shotX1 The x location of the shot at the end of the loop
+	 * @param shotY1 The y location of the shot at the end of the loop
+	 * @return True if they overlapped at some sample
+	 */
+	private boolean overlappedDuring(long delta,double alienX0,double alienY0,double alienX1,double alienY1,int sprite,
+									 double shotX0,double shotY0,double shotX1,double shotY1) {
+		SpriteShapes shapes = SpriteShapes.get();
+		CollisionMask alienMask = shapes.getMask(sprite);
+		CollisionMask shotMask = shapes.getMask(projectiles.getSpriteId());
+
+		long samples = delta * SAMPLES_PER_MS;
+		for (long i=0;i<=samples;i++) {
+			double t = (double) i / samples;
+			int alienX = (int) (alienX0 + ((alienX1 - alienX0) * t));
+			int alienY = (int) (alienY0 + ((alienY1 - alienY0) * t));
+			int shotX = (int) (shotX0 + ((shotX1 - shotX0) * t));
+			int shotY = (int) (shotY0 + ((shotY1 - shotY0) * t));
+
+			if ((shotX >= alienX + alienMask.getWidth()) || (alienX >= shotX + shotMask.getWidth()) ||
+				(shotY >= alienY + alienMask.getHeight()) || (alienY >= shotY + shotMask.getHeight())) {
+				continue;
+			}
+			if (!pixelPerfect || shotMask.overlaps(alienMask,alienX-shotX,alienY-shotY)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Right align a number in a column
+	 *
+	 * @param value The value to display
+	 * @param width The width of the column
+	 * @return The padded value
+	 */
+	private static String pad(long value,int width) {
+		StringBuilder result = new StringBuilder(Long.toString(value));
+		while (result.length() < width) {
+			result.insert(0,' ');
+		}
+		return result.toString();
+	}
+}
@@ -1,24 +1,48 @@
 package com.spaceinvaders;
 
-import com.spaceinvader.timer.AdvancedTimer;
+import com.spaceinvader.timer.Clock;
+import com.spaceinvader.timer.FramePacer;
+import com.spaceinvader.timer.SystemClock;
 
 /**
  * A wrapper class that provides timing methods. This class
  * provides us with a central location where we can add
- * our current timing implementation. Initially, we're going to
- * rely on the GAGE timer. (@see http://java.dnsalias.com)
+ * our current timing implementation. All timing goes through a
+ * clock, normally following real time, which can be swapped for a 
+ * virtual clock to run the game faster than real time.
  * 
  */
 public class SystemTimer {
-	/** Our link into the GAGE timer library */
-	private static AdvancedTimer timer = new AdvancedTimer();
-	/** The number of "timer ticks" per second */
-	private static long timerTicksPerSecond;
+	/** The pacer used to wait without spinning the processor */
+	private static FramePacer pacer = new FramePacer();
+	/** The clock all timing goes through */
+	private static Clock clock = new SystemClock(pacer);
 	
-	/** A little initialisation at startup, we're just going to get the GAGE timer going */
-	static {
-		timer.start();
-		timerTicksPerSecond = AdvancedTimer.getTicksPerSecond();
+	/**
+	 * Set the clock all timing goes through
+	 * 
+	 * @param newClock The clock to use
+	 */
+	public static void setClock(Clock newClock) {
+		clock = newClock;
+	}
+	
+	/**
+	 * Get the clock all timing goes through
+	 * 
+	 * @return The clock in use
+	 */
+	public static Clock getClock() {
+		return clock;
+	}
+	
+	/**
+	 * Get the high resolution time in nanoseconds
+	 * 
+	 * @return The high resolution time in nanoseconds
+	 */
+	public static long getNanoTime() {
+		return clock.nanoTime();
 	}
 	
 	/**
@@ -27,11 +51,7 @@ public class SystemTimer {
 	 * @return The high resolution time in milliseconds
 	 */
 	public static long getTime() {
-		// we get the "timer ticks" from the high resolution timer
-		// multiply by 1000 so our end result is in milliseconds
-		// then divide by the number of ticks in a second giving
-		// us a nice clear time in milliseconds
-		return (timer.getClockTicks() * 1000) / timerTicksPerSecond;
+		return clock.nanoTime() / 1000000;
 	}
 	
 	/**
@@ -40,6 +60,25 @@ public class SystemTimer {
 	 * @param duration The amount of time in milliseconds to sleep for
 	 */
 	public static void sleep(long duration) {
-		timer.sleep((duration * timerTicksPerSecond) / 1000);
+		clock.sleep(duration * 1000000);
+	}
+	
+	/**
+	 * Sleep for a fixed number of nanoseconds. 
+	 * 
+	 * @param duration The amount of time in nanoseconds to sleep for
+	 */
+	public static void sleepNanos(long duration) {
+		clock.sleep(duration);
+	}
+	
+	/**
+	 * Get the pacer used for sleeping in real time, which records how 
+	 * accurately sleeps have woken up
+	 * 
+	 * @return The frame pacer
+	 */
+	public static FramePacer getPacer() {
+		return pacer;
 	}
-}
\ No newline at end of file
+}